@@ -15,9 +15,12 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 public class Drive {
 
+    public static final int PAGE_SIZE = 100;
+
     @SerializedName("params")
     private List<Param> params;
     @SerializedName("login")
@@ -36,6 +39,10 @@ public class Drive {
     private Boolean search;
     @SerializedName("hidden")
     private Boolean hidden;
+    @SerializedName("index")
+    private Boolean index;
+
+    private long latency;
 
     public static List<Drive> arrayFrom(String str) {
         Type listType = new TypeToken<List<Drive>>() {}.getType();
@@ -86,6 +93,14 @@ public class Drive {
         this.token = token;
     }
 
+    public long getLatency() {
+        return latency;
+    }
+
+    public void setLatency(long latency) {
+        this.latency = this.latency == 0 ? latency : (this.latency * 3 + latency) / 4;
+    }
+
     public Boolean search() {
         return search == null || search;
     }
@@ -94,6 +109,10 @@ public class Drive {
         return hidden != null && hidden;
     }
 
+    public Boolean index() {
+        return index != null && index;
+    }
+
     public boolean isNew() {
         return getVersion() == 3;
     }
@@ -130,19 +149,41 @@ public class Drive {
         return getHost() + "/search?box=" + param + "&url=&type=video";
     }
 
-    public Drive check() {
+    public synchronized Drive check() {
         if (path == null) setPath(Uri.parse(getServer()).getPath());
-        if (version == 0) setVersion(OkHttp.string(settingsApi()).contains("v2.") ? 2 : 3);
+        if (version == 0) setVersion(findVersion());
+        if (TextUtils.isEmpty(token) && login != null) setToken(Store.get().get(getTokenKey()));
         return this;
     }
 
+    private int findVersion() {
+        String cache = Store.get().get(getVersionKey());
+        if (!cache.isEmpty()) return Integer.parseInt(cache);
+        String response = OkHttp.string(settingsApi());
+        int version = response.contains("v2.") ? 2 : 3;
+        if (!response.isEmpty()) Store.get().put(getVersionKey(), String.valueOf(version), System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1));
+        return version;
+    }
+
+    public String getVersionKey() {
+        return "version@" + getHost();
+    }
+
+    public String getTokenKey() {
+        return "token@" + getHost() + "@" + getLogin().getUsername();
+    }
+
     public String params(String keyword) {
+        return params(keyword, 1);
+    }
+
+    public String params(String keyword, int page) {
         if (isNew()) {
             Map<String, Object> params = new HashMap<>();
             params.put("keywords", keyword);
-            params.put("page", 1);
+            params.put("page", page);
             params.put("parent", "/");
-            params.put("per_page", 100);
+            params.put("per_page", PAGE_SIZE);
             return new Gson().toJson(params);
         } else {
             Map<String, Object> params = new HashMap<>();
@@ -17,6 +17,13 @@ import java.util.Locale;
 
 public class Item {
 
+    private static final ThreadLocal<SimpleDateFormat> FORMAT = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            return new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ", Locale.getDefault());
+        }
+    };
+
     @SerializedName("name")
     private String name;
     @SerializedName(value = "path", alternate = "parent")
@@ -32,6 +39,8 @@ public class Item {
     @SerializedName(value = "modified", alternate = "updated_at")
     private String modified;
 
+    private transient Long time;
+
     public static Item objectFrom(String str) {
         return new Gson().fromJson(str, Item.class);
     }
@@ -86,11 +95,20 @@ public class Item {
     }
 
     public Date getDate() {
+        long time = getTime();
+        return time == 0 ? new Date() : new Date(time);
+    }
+
+    public long getTime() {
+        if (time == null) time = parseTime();
+        return time;
+    }
+
+    private long parseTime() {
         try {
-            SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ", Locale.getDefault());
-            return format.parse(getModified());
+            return FORMAT.get().parse(getModified()).getTime();
         } catch (Exception e) {
-            return new Date();
+            return 0;
         }
     }
 
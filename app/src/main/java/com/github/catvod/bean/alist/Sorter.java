@@ -1,35 +1,34 @@
 package com.github.catvod.bean.alist;
 
-import java.util.Collections;
-import java.util.Comparator;
+import com.github.catvod.utils.Sort;
+
 import java.util.List;
 
-public class Sorter implements Comparator<Item> {
+public class Sorter implements Sort.Key<Item> {
 
-    private final String type;
-    private final String order;
+    private static final Sorter INSTANCE = new Sorter();
 
     public static void sort(String type, String order, List<Item> items) {
-        Collections.sort(items, new Sorter(type, order));
+        Sort.sort(items, INSTANCE, type, order);
+    }
+
+    @Override
+    public String getName(Item item) {
+        return item.getName();
     }
 
-    public Sorter(String type, String order) {
-        this.type = type;
-        this.order = order;
+    @Override
+    public long getSize(Item item) {
+        return item.getSize();
+    }
+
+    @Override
+    public long getTime(Item item) {
+        return item.getTime();
     }
 
     @Override
-    public int compare(Item o1, Item o2) {
-        boolean asc = order.equals("asc");
-        switch (type) {
-            case "name":
-                return asc ? o1.getName().compareTo(o2.getName()) : o2.getName().compareTo(o1.getName());
-            case "size":
-                return asc ? Long.compare(o1.getSize(), o2.getSize()) : Long.compare(o2.getSize(), o1.getSize());
-            case "date":
-                return asc ? o1.getDate().compareTo(o2.getDate()) : o2.getDate().compareTo(o1.getDate());
-            default:
-                return -1;
-        }
+    public boolean isFolder(Item item) {
+        return item.isFolder();
     }
 }
@@ -0,0 +1,80 @@
+package com.github.catvod.bean.alist;
+
+import com.github.catvod.utils.Path;
+import com.google.gson.Gson;
+import com.google.gson.annotations.SerializedName;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+public class Store {
+
+    @SerializedName("records")
+    private Map<String, Record> records;
+
+    private static Store instance;
+
+    public static synchronized Store get() {
+        if (instance == null) instance = load();
+        return instance;
+    }
+
+    private static Store load() {
+        try {
+            Store store = new Gson().fromJson(Path.read(getFile()), Store.class);
+            return store == null ? new Store() : store;
+        } catch (Exception e) {
+            return new Store();
+        }
+    }
+
+    private static File getFile() {
+        return Path.tv("alist_store");
+    }
+
+    private Map<String, Record> getRecords() {
+        return records = records == null ? new HashMap<>() : records;
+    }
+
+    public synchronized String get(String key) {
+        Record record = getRecords().get(key);
+        if (record == null) return "";
+        if (!record.isExpired()) return record.value;
+        getRecords().remove(key);
+        return "";
+    }
+
+    public synchronized void put(String key, String value, long expire) {
+        getRecords().put(key, new Record(value, expire));
+        save();
+    }
+
+    public synchronized void remove(String key) {
+        if (getRecords().remove(key) != null) save();
+    }
+
+    private void save() {
+        Iterator<Record> iterator = getRecords().values().iterator();
+        while (iterator.hasNext()) if (iterator.next().isExpired()) iterator.remove();
+        Path.write(getFile(), new Gson().toJson(this).getBytes());
+    }
+
+    static class Record {
+
+        @SerializedName("value")
+        private final String value;
+        @SerializedName("expire")
+        private final long expire;
+
+        public Record(String value, long expire) {
+            this.value = value;
+            this.expire = expire;
+        }
+
+        public boolean isExpired() {
+            return System.currentTimeMillis() > expire;
+        }
+    }
+}
@@ -36,4 +36,9 @@ public class Dash {
     public List<Media> getAudio() {
         return audio == null ? Collections.emptyList() : audio;
     }
+
+    public long getDeadline() {
+        for (Media media : getVideo()) if (media.getDeadline() > 0) return media.getDeadline();
+        return 0;
+    }
 }
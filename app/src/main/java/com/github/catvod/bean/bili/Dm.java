@@ -0,0 +1,40 @@
+package com.github.catvod.bean.bili;
+
+import android.text.TextUtils;
+import android.util.SparseIntArray;
+import android.util.Xml;
+
+import org.xmlpull.v1.XmlPullParser;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+public class Dm {
+
+    public static byte[] parse(InputStream is, int max) throws Exception {
+        XmlPullParser parser = Xml.newPullParser();
+        parser.setInput(is, "UTF-8");
+        SparseIntArray counts = new SparseIntArray();
+        StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?><i>");
+        for (int event = parser.getEventType(); event != XmlPullParser.END_DOCUMENT; event = parser.next()) {
+            if (event != XmlPullParser.START_TAG || !"d".equals(parser.getName())) continue;
+            String p = parser.getAttributeValue(null, "p");
+            String text = parser.nextText();
+            if (TextUtils.isEmpty(p) || TextUtils.isEmpty(text)) continue;
+            if (max > 0 && !keep(counts, p, max)) continue;
+            sb.append("<d p=\"").append(p).append("\">").append(TextUtils.htmlEncode(text)).append("</d>");
+        }
+        return sb.append("</i>").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static boolean keep(SparseIntArray counts, String p, int max) {
+        try {
+            int bucket = (int) Float.parseFloat(p.substring(0, p.indexOf(',')));
+            int count = counts.get(bucket) + 1;
+            counts.put(bucket, count);
+            return count <= max;
+        } catch (Exception e) {
+            return true;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.github.catvod.bean.bili;
 
+import android.net.Uri;
+
 import com.google.gson.annotations.SerializedName;
 
 public class Media {
@@ -76,4 +78,26 @@ public class Media {
     public String getCodecId() {
         return codecid;
     }
+
+    public String getKey() {
+        return getId() + "_" + getCodecId();
+    }
+
+    public long getHeadEnd() {
+        try {
+            long init = Long.parseLong(getSegmentBase().getInitialization().split("-")[1]);
+            long index = Long.parseLong(getSegmentBase().getIndexRange().split("-")[1]);
+            return Math.max(init, index);
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    public long getDeadline() {
+        try {
+            return Long.parseLong(Uri.parse(getBaseUrl()).getQueryParameter("deadline"));
+        } catch (Exception e) {
+            return 0;
+        }
+    }
 }
@@ -0,0 +1,56 @@
+package com.github.catvod.bean.bili;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class Mpd {
+
+    private static final Template HEAD = new Template("<MPD xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns=\"urn:mpeg:dash:schema:mpd:2011\" xsi:schemaLocation=\"urn:mpeg:dash:schema:mpd:2011 DASH-MPD.xsd\" type=\"static\" mediaPresentationDuration=\"PT{}S\" minBufferTime=\"PT{}S\" profiles=\"urn:mpeg:dash:profile:isoff-on-demand:2011\">\n<Period duration=\"PT{}S\" start=\"PT0S\">\n");
+    private static final Template ADAPTATION = new Template("<AdaptationSet>\n<ContentComponent contentType=\"{}\"/>\n<Representation id=\"{}\" bandwidth=\"{}\" codecs=\"{}\" mimeType=\"{}\" ");
+    private static final Template VIDEO = new Template("height='{}' width='{}' frameRate='{}' sar='{}'");
+    private static final Template AUDIO = new Template("numChannels='2' sampleRate='{}'");
+    private static final Template SEGMENT = new Template(" startWithSAP=\"{}\">\n<BaseURL>{}</BaseURL>\n<SegmentBase indexRange=\"{}\">\n<Initialization range=\"{}\"/>\n</SegmentBase>\n</Representation>\n</AdaptationSet>\n");
+    private static final String TAIL = "</Period>\n</MPD>";
+    private static final Map<String, String> SAMPLE_RATE = new HashMap<>();
+
+    static {
+        SAMPLE_RATE.put("30280", "192000");
+        SAMPLE_RATE.put("30232", "132000");
+        SAMPLE_RATE.put("30216", "64000");
+    }
+
+    public static boolean isAudio(Media media) {
+        return SAMPLE_RATE.containsKey(media.getId());
+    }
+
+    public static String create(Dash dash, Media video, String relay) {
+        StringBuilder sb = new StringBuilder(4096);
+        HEAD.render(sb, dash.getDuration(), dash.getMinBufferTime(), dash.getDuration());
+        if (video != null) append(sb, video, relay);
+        for (Media audio : dash.getAudio()) if (isAudio(audio)) append(sb, audio, relay);
+        return sb.append(TAIL).toString();
+    }
+
+    private static void append(StringBuilder sb, Media media, String relay) {
+        String baseUrl = relay == null ? media.getBaseUrl() : relay + "&id=" + media.getKey();
+        boolean video = media.getMimeType().startsWith("video");
+        ADAPTATION.render(sb, video ? "video" : "audio", media.getKey(), media.getBandWidth(), media.getCodecs(), media.getMimeType());
+        if (video) VIDEO.render(sb, media.getHeight(), media.getWidth(), media.getFrameRate(), media.getSar());
+        else AUDIO.render(sb, SAMPLE_RATE.get(media.getId()));
+        SEGMENT.render(sb, media.getStartWithSap(), baseUrl.replace("&", "&amp;"), media.getSegmentBase().getIndexRange(), media.getSegmentBase().getInitialization());
+    }
+
+    private static class Template {
+
+        private final String[] parts;
+
+        public Template(String text) {
+            this.parts = text.split("\\{\\}", -1);
+        }
+
+        public void render(StringBuilder sb, Object... values) {
+            for (int i = 0; i < values.length; i++) sb.append(parts[i]).append(values[i]);
+            sb.append(parts[values.length]);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.github.catvod.bean.bili;
+
+import android.util.LruCache;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import okhttp3.Response;
+
+public class Relay {
+
+    private final LruCache<String, Head> cache;
+
+    public Relay(int size) {
+        this.cache = new LruCache<>(size) {
+            @Override
+            protected int sizeOf(String key, Head value) {
+                return value.data.length;
+            }
+        };
+    }
+
+    public boolean has(String key) {
+        return cache.get(key) != null;
+    }
+
+    public void put(String key, Response res) throws IOException {
+        if (res.code() != 206) return;
+        String range = res.header("Content-Range");
+        long total = range == null || !range.contains("/") ? -1 : Long.parseLong(range.substring(range.indexOf('/') + 1).trim());
+        cache.put(key, new Head(res.body().bytes(), total));
+    }
+
+    public Object[] get(String key, String range, String mimeType) {
+        Head head = range == null ? null : cache.get(key);
+        if (head == null || head.total < 0) return null;
+        long[] bounds = parse(range);
+        if (bounds == null || bounds[1] < bounds[0] || bounds[1] >= head.data.length) return null;
+        int start = (int) bounds[0];
+        int length = (int) (bounds[1] - bounds[0] + 1);
+        Map<String, String> header = new HashMap<>();
+        header.put("Accept-Ranges", "bytes");
+        header.put("Content-Length", String.valueOf(length));
+        header.put("Content-Range", "bytes " + bounds[0] + "-" + bounds[1] + "/" + head.total);
+        Object[] result = new Object[4];
+        result[0] = 206;
+        result[1] = mimeType;
+        result[2] = new ByteArrayInputStream(head.data, start, length);
+        result[3] = header;
+        return result;
+    }
+
+    private long[] parse(String range) {
+        try {
+            String[] split = range.trim().replace("bytes=", "").split("-");
+            if (split.length < 2 || split[0].isEmpty() || split[1].isEmpty()) return null;
+            return new long[]{Long.parseLong(split[0].trim()), Long.parseLong(split[1].trim())};
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static class Head {
+
+        private final byte[] data;
+        private final long total;
+
+        public Head(byte[] data, long total) {
+            this.data = data;
+            this.total = total;
+        }
+    }
+}
@@ -23,7 +23,12 @@ public class Resp {
     private Data data;
 
     public static Resp objectFrom(String str) {
-        return new Gson().fromJson(str, Resp.class);
+        try {
+            Resp resp = new Gson().fromJson(str, Resp.class);
+            return resp == null ? new Resp() : resp;
+        } catch (Exception e) {
+            return new Resp();
+        }
     }
 
     public Data getData() {
@@ -0,0 +1,163 @@
+package com.github.catvod.bean.bili;
+
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+public class Selector {
+
+    private static final String[] CODECS = new String[]{"13", "12", "7"};
+    private static final Map<String, String> TYPES = new HashMap<>();
+    private static final long MIN_BYTES = 256 * 1024;
+    private static final double HEADROOM = 1.25;
+    private static final double ALPHA = 0.3;
+
+    static {
+        TYPES.put("13", "video/av01");
+        TYPES.put("12", "video/hevc");
+        TYPES.put("7", "video/avc");
+    }
+
+    private final Map<String, List<MediaCodecInfo.VideoCapabilities>> decoders;
+    private volatile double throughput;
+
+    public Selector() {
+        this.decoders = getDecoders();
+    }
+
+    private Map<String, List<MediaCodecInfo.VideoCapabilities>> getDecoders() {
+        Map<String, List<MediaCodecInfo.VideoCapabilities>> decoders = new HashMap<>();
+        try {
+            for (MediaCodecInfo info : new MediaCodecList(MediaCodecList.REGULAR_CODECS).getCodecInfos()) {
+                if (info.isEncoder() || isSoftware(info)) continue;
+                for (String type : info.getSupportedTypes()) {
+                    for (Map.Entry<String, String> entry : TYPES.entrySet()) {
+                        if (!entry.getValue().equalsIgnoreCase(type)) continue;
+                        if (!decoders.containsKey(entry.getKey())) decoders.put(entry.getKey(), new ArrayList<>());
+                        decoders.get(entry.getKey()).add(getCapabilities(info, type));
+                    }
+                }
+            }
+        } catch (Throwable ignored) {
+        }
+        return decoders;
+    }
+
+    private boolean isSoftware(MediaCodecInfo info) {
+        String name = info.getName().toLowerCase(Locale.ROOT);
+        return name.startsWith("omx.google.") || name.startsWith("c2.android.");
+    }
+
+    private MediaCodecInfo.VideoCapabilities getCapabilities(MediaCodecInfo info, String type) {
+        try {
+            return info.getCapabilitiesForType(type).getVideoCapabilities();
+        } catch (Throwable e) {
+            return null;
+        }
+    }
+
+    private boolean isSupported(String codec, Media media) {
+        List<MediaCodecInfo.VideoCapabilities> items = decoders.get(codec);
+        if (items == null) return false;
+        for (MediaCodecInfo.VideoCapabilities caps : items) if (isSupported(caps, media)) return true;
+        return false;
+    }
+
+    private boolean isSupported(MediaCodecInfo.VideoCapabilities caps, Media media) {
+        try {
+            return caps == null || caps.areSizeAndRateSupported(Integer.parseInt(media.getWidth()), Integer.parseInt(media.getHeight()), getFrameRate(media));
+        } catch (Throwable e) {
+            return true;
+        }
+    }
+
+    private double getFrameRate(Media media) {
+        String[] split = media.getFrameRate().split("/");
+        return split.length == 2 ? Double.parseDouble(split[0]) / Double.parseDouble(split[1]) : Double.parseDouble(split[0]);
+    }
+
+    public void record(long bytes, long millis) {
+        if (bytes < MIN_BYTES || millis <= 0) return;
+        double bps = bytes * 8000.0 / millis;
+        throughput = throughput == 0 ? bps : throughput * (1 - ALPHA) + bps * ALPHA;
+    }
+
+    public Media find(Dash dash, String qn) {
+        Media avc = null;
+        for (String codec : CODECS) {
+            for (Media media : dash.getVideo()) {
+                if (!media.getId().equals(qn) || !codec.equals(media.getCodecId())) continue;
+                if (isSupported(codec, media)) return media;
+                if (avc == null && codec.equals("7")) avc = media;
+            }
+        }
+        if (avc != null) return avc;
+        for (Media media : dash.getVideo()) if (media.getId().equals(qn)) return media;
+        return null;
+    }
+
+    // Throughput is only sampled from relayed segments; without relay this keeps the API order.
+    public void sort(Dash dash, List<String> qualities, List<String> descs) {
+        if (throughput == 0 || qualities.size() < 2) return;
+        for (int i = 0; i < qualities.size(); i++) {
+            Media media = find(dash, qualities.get(i));
+            if (media == null || getBandwidth(media) * HEADROOM > throughput) continue;
+            moveFirst(qualities, descs, i);
+            return;
+        }
+        moveFirst(qualities, descs, qualities.size() - 1);
+    }
+
+    private void moveFirst(List<String> qualities, List<String> descs, int index) {
+        qualities.add(0, qualities.remove(index));
+        descs.add(0, descs.remove(index));
+    }
+
+    private long getBandwidth(Media media) {
+        try {
+            return Long.parseLong(media.getBandWidth());
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    public InputStream wrap(InputStream is) {
+        return new FilterInputStream(is) {
+
+            private long bytes;
+            private long millis;
+
+            @Override
+            public int read() throws IOException {
+                long start = System.currentTimeMillis();
+                int b = super.read();
+                millis += System.currentTimeMillis() - start;
+                if (b != -1) bytes++;
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                long start = System.currentTimeMillis();
+                int read = super.read(b, off, len);
+                millis += System.currentTimeMillis() - start;
+                if (read > 0) bytes += read;
+                return read;
+            }
+
+            @Override
+            public void close() throws IOException {
+                record(bytes, millis);
+                super.close();
+            }
+        };
+    }
+}
@@ -0,0 +1,72 @@
+package com.github.catvod.bean.bili;
+
+import com.github.catvod.utils.Crypto;
+import com.google.gson.Gson;
+import com.google.gson.annotations.SerializedName;
+
+import java.util.concurrent.TimeUnit;
+
+public class Session {
+
+    private static final long REFRESH = TimeUnit.DAYS.toMillis(1);
+
+    @SerializedName("cookie")
+    private String cookie;
+    @SerializedName("login")
+    private boolean login;
+    @SerializedName("vip")
+    private boolean vip;
+    @SerializedName("wbi")
+    private Wbi wbi;
+    @SerializedName("time")
+    private long time;
+
+    public static Session objectFrom(String str) {
+        try {
+            Session session = new Gson().fromJson(str, Session.class);
+            return session == null ? new Session() : session;
+        } catch (Exception e) {
+            return new Session();
+        }
+    }
+
+    public static Session create(String cookie, Data data) {
+        Session session = new Session();
+        session.cookie = Crypto.md5(cookie);
+        session.login = data.isLogin();
+        session.vip = data.isVip();
+        session.wbi = data.getWbi();
+        session.time = System.currentTimeMillis();
+        if (session.isLoaded()) session.wbi.getMixinKey();
+        return session;
+    }
+
+    public boolean isLogin() {
+        return login;
+    }
+
+    public boolean isVip() {
+        return vip;
+    }
+
+    public Wbi getWbi() {
+        return wbi == null ? new Wbi() : wbi;
+    }
+
+    public boolean isLoaded() {
+        return !getWbi().getImgUrl().isEmpty();
+    }
+
+    public boolean isMatch(String cookie) {
+        return isLoaded() && Crypto.md5(cookie).equals(this.cookie);
+    }
+
+    public boolean isFresh(String cookie) {
+        return isMatch(cookie) && System.currentTimeMillis() - time < REFRESH;
+    }
+
+    @Override
+    public String toString() {
+        return new Gson().toJson(this);
+    }
+}
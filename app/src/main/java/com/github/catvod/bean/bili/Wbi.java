@@ -12,12 +12,14 @@ import java.util.LinkedHashMap;
 
 public class Wbi {
 
-    private final int[] mixinKeyEncTab = new int[]{46, 47, 18, 2, 53, 8, 23, 32, 15, 50, 10, 31, 58, 3, 45, 35, 27, 43, 5, 49, 33, 9, 42, 19, 29, 28, 14, 39, 12, 38, 41, 13, 37, 48, 7, 16, 24, 55, 40, 61, 26, 17, 0, 1, 60, 51, 30, 4, 22, 25, 54, 21, 56, 59, 6, 63, 57, 62, 11, 36, 20, 34, 44, 52};
+    private static final int[] mixinKeyEncTab = new int[]{46, 47, 18, 2, 53, 8, 23, 32, 15, 50, 10, 31, 58, 3, 45, 35, 27, 43, 5, 49, 33, 9, 42, 19, 29, 28, 14, 39, 12, 38, 41, 13, 37, 48, 7, 16, 24, 55, 40, 61, 26, 17, 0, 1, 60, 51, 30, 4, 22, 25, 54, 21, 56, 59, 6, 63, 57, 62, 11, 36, 20, 34, 44, 52};
 
     @SerializedName("img_url")
     private String imgUrl;
     @SerializedName("sub_url")
     private String subUrl;
+    @SerializedName("mixin_key")
+    private String mixinKey;
 
     public String getImgUrl() {
         return TextUtils.isEmpty(imgUrl) ? "" : imgUrl;
@@ -27,6 +29,13 @@ public class Wbi {
         return TextUtils.isEmpty(subUrl) ? "" : subUrl;
     }
 
+    public String getMixinKey() {
+        if (!TextUtils.isEmpty(mixinKey)) return mixinKey;
+        String imgKey = Uri.parse(getImgUrl()).getLastPathSegment().split("\\.")[0];
+        String subKey = Uri.parse(getSubUrl()).getLastPathSegment().split("\\.")[0];
+        return mixinKey = getMixinKey(imgKey, subKey);
+    }
+
     private String getMixinKey(String imgKey, String subKey) {
         String s = imgKey + subKey;
         StringBuilder key = new StringBuilder();
@@ -35,9 +44,7 @@ public class Wbi {
     }
 
     public String getQuery(LinkedHashMap<String, Object> params) {
-        String imgKey = Uri.parse(getImgUrl()).getLastPathSegment().split("\\.")[0];
-        String subKey = Uri.parse(getSubUrl()).getLastPathSegment().split("\\.")[0];
-        String mixinKey = getMixinKey(imgKey, subKey);
+        String mixinKey = getMixinKey();
         StringBuilder sb = new StringBuilder();
         params.put("wts", System.currentTimeMillis() / 1000);
         for (String key : params.keySet()) sb.append(key).append("=").append(URLEncoder.encode(params.get(key).toString())).append("&");
@@ -49,6 +49,14 @@ public class Channel {
         return TextUtils.isEmpty(name) ? "" : name;
     }
 
+    public String getTvgName() {
+        return TextUtils.isEmpty(tvgName) ? "" : tvgName;
+    }
+
+    public String getLogo() {
+        return TextUtils.isEmpty(logo) ? "" : logo;
+    }
+
     public List<String> getUrls() {
         return urls = urls == null ? new ArrayList<>() : urls;
     }
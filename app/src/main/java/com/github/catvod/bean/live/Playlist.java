@@ -0,0 +1,89 @@
+package com.github.catvod.bean.live;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.List;
+
+public class Playlist {
+
+    private static final int SIZE = 160;
+
+    private final Writer writer;
+    private final Gson gson;
+
+    public static Playlist create(int count) {
+        return new Playlist(new StringWriter(Math.max(count, 1) * SIZE));
+    }
+
+    public static int count(List<Group> groups) {
+        int count = 0;
+        for (Group group : groups) count += group.getChannel().size();
+        return count;
+    }
+
+    public Playlist(Writer writer) {
+        this.writer = writer;
+        this.gson = new Gson();
+    }
+
+    public Playlist json(List<Group> groups) throws IOException {
+        JsonWriter json = gson.newJsonWriter(writer);
+        TypeAdapter<Channel> adapter = gson.getAdapter(Channel.class);
+        json.beginArray();
+        for (Group group : groups) {
+            json.beginObject();
+            json.name("channel").beginArray();
+            for (Channel channel : group.getChannel()) adapter.write(json, channel);
+            json.endArray();
+            json.name("name").value(group.getName());
+            json.endObject();
+        }
+        json.endArray();
+        json.flush();
+        return this;
+    }
+
+    public Playlist txt(List<Group> groups) throws IOException {
+        for (Group group : groups) {
+            group(group.getName());
+            for (Channel channel : group.getChannel()) for (String url : channel.getUrls()) channel(channel.getName(), url);
+        }
+        return this;
+    }
+
+    public Playlist m3u(List<Group> groups) throws IOException {
+        writer.write("#EXTM3U\n");
+        for (Group group : groups) {
+            for (Channel channel : group.getChannel()) {
+                for (String url : channel.getUrls()) {
+                    writer.append("#EXTINF:-1");
+                    if (!channel.getTvgName().isEmpty()) writer.append(" tvg-name=\"").append(channel.getTvgName()).append('"');
+                    if (!channel.getLogo().isEmpty()) writer.append(" tvg-logo=\"").append(channel.getLogo()).append('"');
+                    writer.append(" group-title=\"").append(group.getName()).append("\",").append(channel.getName()).append('\n');
+                    writer.append(url).append('\n');
+                }
+            }
+        }
+        return this;
+    }
+
+    public Playlist group(String name) throws IOException {
+        writer.append(name).append(",#genre#\n");
+        return this;
+    }
+
+    public Playlist channel(String name, String url) throws IOException {
+        writer.append(name).append(',').append(url).append('\n');
+        return this;
+    }
+
+    public String string() throws IOException {
+        writer.flush();
+        return writer.toString();
+    }
+}
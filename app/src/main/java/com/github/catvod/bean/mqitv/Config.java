@@ -1,6 +1,7 @@
 package com.github.catvod.bean.mqitv;
 
 import android.net.Uri;
+import android.util.LruCache;
 
 import androidx.annotation.Nullable;
 
@@ -11,20 +12,30 @@ import com.google.gson.reflect.TypeToken;
 
 import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import okhttp3.Response;
+import okio.BufferedSource;
+
 public class Config {
 
+    private static final String TARGET_DURATION = "#EXT-X-TARGETDURATION:";
+    private static final long AUTH_TTL = TimeUnit.SECONDS.toMillis(30);
+    private static final long M3U8_TTL = TimeUnit.SECONDS.toMillis(1);
+
     @SerializedName("name")
     private String name;
     @SerializedName("url")
     private String url;
 
-    private List<User> users;
-    private List<Data> data;
+    private LruCache<String, Entry> cache;
+    private volatile List<Data> data;
+    private Pool pool;
     private Uri uri;
 
     public static List<Config> arrayFrom(String str) {
@@ -44,12 +55,16 @@ public class Config {
         return url == null ? "" : url;
     }
 
-    public List<User> getUsers() {
-        return users = users == null ? new ArrayList<>() : users;
+    public synchronized List<Data> getData() {
+        if (data != null) return data;
+        List<Data> items = Data.objectFrom(OkHttp.string(getApi(), 3000)).getData();
+        if (!items.isEmpty()) data = items;
+        return items;
     }
 
-    public List<Data> getData() {
-        return data = data == null ? Data.objectFrom(OkHttp.string(getApi(), 3000)).getData() : data;
+    public List<Data> getLoaded() {
+        List<Data> items = data;
+        return items == null ? Collections.emptyList() : items;
     }
 
     public Uri getUri() {
@@ -64,54 +79,90 @@ public class Config {
         return "http://" + getUri().getHost() + ":" + port + "/" + playing.replace(":/", "");
     }
 
-    public void loadUser() {
+    private synchronized LruCache<String, Entry> getCache() {
+        return cache = cache == null ? new LruCache<>(128) : cache;
+    }
+
+    public synchronized Pool getPool(ScheduledExecutorService executor) {
+        return pool = pool == null ? new Pool(this, executor) : pool;
+    }
+
+    public List<User> getCandidates() {
+        List<User> users = new ArrayList<>();
         Pattern userPattern = Pattern.compile(".*?([0-9a-zA-Z]{11,}).*", Pattern.CASE_INSENSITIVE);
         Pattern macPattern = Pattern.compile(".*?(([a-fA-F0-9]{2}:){5}[a-fA-F0-9]{2}).*", Pattern.CASE_INSENSITIVE);
         for (Data item : getData()) {
             for (String userIp : item.getStat().getUserIpList()) {
-                if (getUsers().size() >= 5) continue;
                 Matcher userMatcher = userPattern.matcher(userIp);
                 Matcher macMatcher = macPattern.matcher(userIp);
                 String user = userMatcher.matches() ? userMatcher.group(1) : "";
                 String mac = macMatcher.matches() ? macMatcher.group(1) : "";
-                if (!user.isEmpty() && !mac.isEmpty()) {
-                    User u = new User(user, mac).getToken(getUrl());
-                    if (!u.getToken().isEmpty()) getUsers().add(u);
-                }
+                if (user.isEmpty() || mac.isEmpty()) continue;
+                User candidate = new User(user, mac);
+                if (!users.contains(candidate)) users.add(candidate);
             }
         }
+        return users;
     }
 
-    public User getUser() {
-        if (getUsers().isEmpty()) loadUser();
-        return getUsers().isEmpty() ? new User("", "") : getUsers().get(ThreadLocalRandom.current().nextInt(getUsers().size()));
+    public User getUser(ScheduledExecutorService executor) {
+        User user = getPool(executor).get();
+        return user == null ? new User("", "") : user;
     }
 
     public String getAuth(String id, String token) {
+        String key = id + "@" + token;
+        Entry entry = getCache().get(key);
+        if (entry != null && entry.isValid()) return entry.getValue();
         String data = OkHttp.string(getUrl() + "/ualive?cid=" + id + "&token=" + token);
         Matcher matcher = Pattern.compile("\"Reason\":\"(.*?)\"", Pattern.CASE_INSENSITIVE).matcher(data);
-        if (matcher.find()) return matcher.group(1);
-        return "";
+        String reason = matcher.find() ? matcher.group(1) : "";
+        if ("OK".equals(reason)) getCache().put(key, new Entry(reason, AUTH_TTL));
+        return reason;
     }
 
     public String getM3U8(String id, String token, String port) {
-        String base = "http://" + getUri().getHost() + ":" + port + "/";
-        String m3u8 = OkHttp.string(base + id + ".m3u8?token=" + token);
-        if (m3u8.isEmpty() || m3u8.contains("\"Reason\"")) return "";
-        String[] lines = m3u8.split("\\r?\\n");
-        StringBuilder sb = new StringBuilder();
-        for (String line : lines) {
-            if (!line.startsWith("#") && !line.startsWith("http")) line = base + line;
-            sb.append(line).append("\n");
+        String key = id + ":" + port;
+        Entry entry = getCache().get(key);
+        if (entry != null && entry.isValid()) return entry.getValue();
+        String m3u8 = fetchM3U8(key, "http://" + getUri().getHost() + ":" + port + "/", id, token);
+        if (m3u8.isEmpty()) getCache().remove(id + "@" + token);
+        return m3u8;
+    }
+
+    private String fetchM3U8(String key, String base, String id, String token) {
+        try (Response res = OkHttp.newCall(base + id + ".m3u8?token=" + token, key)) {
+            if (!res.isSuccessful()) return "";
+            BufferedSource source = res.body().source();
+            StringBuilder sb = new StringBuilder();
+            long ttl = M3U8_TTL;
+            String line;
+            while ((line = source.readUtf8Line()) != null) {
+                if (line.isEmpty()) continue;
+                if (line.contains("\"Reason\"")) return "";
+                if (line.startsWith(TARGET_DURATION)) ttl = getTtl(line);
+                if (!line.startsWith("#") && !line.startsWith("http")) sb.append(base);
+                sb.append(line).append("\n");
+            }
+            String m3u8 = sb.toString();
+            if (!m3u8.isEmpty()) getCache().put(key, new Entry(m3u8, ttl));
+            return m3u8;
+        } catch (Exception e) {
+            return "";
         }
-        return sb.toString();
     }
 
-    public void clear() {
-        this.data.clear();
-        this.users.clear();
-        this.data = null;
-        this.users = null;
+    private long getTtl(String line) {
+        try {
+            return Math.max(M3U8_TTL, (long) (Double.parseDouble(line.substring(TARGET_DURATION.length()).trim()) * 500));
+        } catch (NumberFormatException e) {
+            return M3U8_TTL;
+        }
+    }
+
+    public synchronized void release() {
+        if (pool != null) pool.release();
+        pool = null;
     }
 
     @Override
@@ -121,4 +172,23 @@ public class Config {
         Config it = (Config) obj;
         return getUrl().equals(it.getUrl());
     }
+
+    private static class Entry {
+
+        private final String value;
+        private final long expire;
+
+        public Entry(String value, long ttl) {
+            this.value = value;
+            this.expire = System.currentTimeMillis() + ttl;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public boolean isValid() {
+            return System.currentTimeMillis() < expire;
+        }
+    }
 }
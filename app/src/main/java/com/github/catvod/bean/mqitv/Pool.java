@@ -0,0 +1,135 @@
+package com.github.catvod.bean.mqitv;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class Pool {
+
+    private static final long REFRESH = TimeUnit.MINUTES.toMillis(1);
+    private static final long MARGIN = TimeUnit.MINUTES.toMillis(5);
+    private static final long COOLDOWN = TimeUnit.SECONDS.toMillis(30);
+    private static final int MAX_FAIL = 3;
+    private static final int SIZE = 5;
+
+    private final ScheduledExecutorService executor;
+    private final CopyOnWriteArrayList<User> users;
+    private final AtomicBoolean filling;
+    private final Set<User> logins;
+    private final Config config;
+    private ScheduledFuture<?> refresh;
+    private volatile long filled;
+
+    public Pool(Config config, ScheduledExecutorService executor) {
+        this.executor = executor;
+        this.config = config;
+        this.filling = new AtomicBoolean();
+        this.users = new CopyOnWriteArrayList<>();
+        this.logins = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    }
+
+    private synchronized void start() {
+        if (refresh == null) refresh = executor.scheduleWithFixedDelay(this::refresh, REFRESH, REFRESH, TimeUnit.MILLISECONDS);
+    }
+
+    public User get() {
+        start();
+        List<User> best = new ArrayList<>();
+        int valid = 0;
+        for (User user : users) {
+            if (!user.isValid()) continue;
+            valid++;
+            if (!best.isEmpty() && user.getFail() > best.get(0).getFail()) continue;
+            if (!best.isEmpty() && user.getFail() < best.get(0).getFail()) best.clear();
+            best.add(user);
+        }
+        User user = best.isEmpty() ? await() : best.get(ThreadLocalRandom.current().nextInt(best.size()));
+        if (valid < SIZE) fill();
+        return user;
+    }
+
+    public void fail(User user) {
+        user.fail();
+        if (user.getFail() >= MAX_FAIL) remove(user);
+        else login(user);
+    }
+
+    public void fill() {
+        if (System.currentTimeMillis() - filled < COOLDOWN) return;
+        if (!filling.compareAndSet(false, true)) return;
+        try {
+            executor.execute(() -> {
+                try {
+                    for (User user : config.getCandidates()) {
+                        if (users.size() + logins.size() >= SIZE) break;
+                        if (!users.contains(user)) login(user);
+                    }
+                } finally {
+                    filled = System.currentTimeMillis();
+                    filling.set(false);
+                }
+            });
+        } catch (Exception e) {
+            filling.set(false);
+        }
+    }
+
+    public synchronized void release() {
+        if (refresh != null) refresh.cancel(true);
+        refresh = null;
+        users.clear();
+    }
+
+    private void refresh() {
+        for (User user : users) if (user.isExpiring(MARGIN)) login(user);
+        if (users.size() < SIZE) fill();
+    }
+
+    private void remove(User user) {
+        users.remove(user);
+        fill();
+    }
+
+    private User await() {
+        for (User user : config.getCandidates()) {
+            if (users.contains(user) || !logins.add(user)) continue;
+            try {
+                if (!user.getToken(config.getUrl()).isValid()) continue;
+                user.success();
+                users.addIfAbsent(user);
+                return user;
+            } finally {
+                logins.remove(user);
+            }
+        }
+        return null;
+    }
+
+    private void login(User user) {
+        if (!logins.add(user)) return;
+        try {
+            executor.execute(() -> {
+                try {
+                    if (user.getToken(config.getUrl()).isValid()) {
+                        user.success();
+                        users.addIfAbsent(user);
+                    } else {
+                        users.remove(user);
+                    }
+                } finally {
+                    logins.remove(user);
+                }
+            });
+        } catch (Exception e) {
+            logins.remove(user);
+        }
+    }
+}
@@ -3,14 +3,19 @@ package com.github.catvod.bean.mqitv;
 import com.github.catvod.net.OkHttp;
 
 import java.util.Locale;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class User {
 
-    private String id;
-    private String mac;
-    private String token;
+    private static final long TTL = TimeUnit.MINUTES.toMillis(20);
+
+    private final String id;
+    private final String mac;
+    private volatile String token;
+    private volatile long expire;
+    private volatile int fail;
 
     public User(String id, String mac) {
         this.id = id;
@@ -29,11 +34,45 @@ public class User {
         return token == null ? "" : token;
     }
 
+    public int getFail() {
+        return fail;
+    }
+
+    public boolean isValid() {
+        return !getToken().isEmpty() && System.currentTimeMillis() < expire;
+    }
+
+    public boolean isExpiring(long margin) {
+        return System.currentTimeMillis() + margin >= expire;
+    }
+
+    public void success() {
+        fail = 0;
+    }
+
+    public void fail() {
+        fail++;
+    }
+
     public User getToken(String url) {
         String result = OkHttp.string(String.format(Locale.getDefault(), "%s/HSAndroidLogin.ecgi?ty=json&net_account=%s&mac_address1=%s&_=%d", url, getId(), getMac(), System.currentTimeMillis()));
         Pattern pattern = Pattern.compile("\"Token\"\\s*:\\s*\"(.*?)\"", Pattern.CASE_INSENSITIVE);
         Matcher matcher = pattern.matcher(result);
         token = matcher.find() ? matcher.group(1) : "";
+        expire = System.currentTimeMillis() + TTL;
         return this;
     }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (!(obj instanceof User)) return false;
+        User it = (User) obj;
+        return getId().equals(it.getId()) && getMac().equals(it.getMac());
+    }
+
+    @Override
+    public int hashCode() {
+        return (getId() + getMac()).hashCode();
+    }
 }
@@ -7,13 +7,20 @@ import com.github.catvod.bean.Class;
 import com.google.gson.Gson;
 import com.google.gson.annotations.SerializedName;
 import com.google.gson.reflect.TypeToken;
+import com.hierynomus.msdtyp.AccessMask;
+import com.hierynomus.mssmb2.SMB2CreateDisposition;
+import com.hierynomus.mssmb2.SMB2ShareAccess;
+import com.hierynomus.mssmb2.SMBApiException;
 import com.hierynomus.smbj.SMBClient;
 import com.hierynomus.smbj.auth.AuthenticationContext;
-import com.hierynomus.smbj.connection.Connection;
-import com.hierynomus.smbj.session.Session;
+import com.hierynomus.smbj.common.SMBRuntimeException;
+import com.hierynomus.smbj.share.Directory;
 import com.hierynomus.smbj.share.DiskShare;
+import com.hierynomus.smbj.share.File;
 
+import java.io.IOException;
 import java.lang.reflect.Type;
+import java.util.EnumSet;
 import java.util.List;
 
 public class Drive {
@@ -23,11 +30,16 @@ public class Drive {
     @SerializedName("server")
     private String server;
 
-    private Connection connection;
-    private SMBClient smbClient;
-    private DiskShare diskShare;
-    private Session session;
+    private AuthenticationContext auth;
+    private String shareName;
     private String subPath;
+    private String host;
+    private int port;
+
+    public interface Call<T> {
+
+        T call(DiskShare share) throws IOException;
+    }
 
     public static List<Drive> arrayFrom(String str) {
         Type listType = new TypeToken<List<Drive>>() {}.getType();
@@ -38,7 +50,7 @@ public class Drive {
         this.name = name;
     }
 
-    private String getName() {
+    public String getName() {
         return TextUtils.isEmpty(name) ? "" : name;
     }
 
@@ -47,12 +59,37 @@ public class Drive {
     }
 
     public String getSubPath() {
+        if (host == null) init();
         return TextUtils.isEmpty(subPath) ? "" : subPath;
     }
 
-    public DiskShare getShare() {
-        if (diskShare == null) init();
-        return diskShare;
+    public DiskShare getShare() throws IOException {
+        if (host == null) init();
+        return Pool.get().share(host, port, auth, shareName);
+    }
+
+    public <T> T execute(Call<T> call) throws IOException {
+        DiskShare share = getShare();
+        try {
+            return call.call(share);
+        } catch (SMBApiException e) {
+            throw e;
+        } catch (SMBRuntimeException | IOException e) {
+            Pool.get().invalidate(share);
+            return call.call(getShare());
+        }
+    }
+
+    public File openFile(String path) throws IOException {
+        return Pool.get().open(execute(share -> share.openFile(path, EnumSet.of(AccessMask.GENERIC_READ), null, SMB2ShareAccess.ALL, SMB2CreateDisposition.FILE_OPEN, null)));
+    }
+
+    public Directory openDirectory(String path) throws IOException {
+        return execute(share -> share.openDirectory(path, EnumSet.of(AccessMask.FILE_LIST_DIRECTORY), null, SMB2ShareAccess.ALL, SMB2CreateDisposition.FILE_OPEN, null));
+    }
+
+    public int getMaxReadSize() throws IOException {
+        return getShare().getTreeConnect().getNegotiatedProtocol().getMaxReadSize();
     }
 
     public Class toType() {
@@ -60,17 +97,13 @@ public class Drive {
     }
 
     private void init() {
-        try {
-            smbClient = new SMBClient();
-            Uri uri = Uri.parse(getServer());
-            String[] parts = uri.getPath().substring(1).split("/", 2);
-            connection = smbClient.connect(uri.getHost(), uri.getPort() != -1 ? uri.getPort() : SMBClient.DEFAULT_PORT);
-            session = connection.authenticate(getAuthentication(uri));
-            diskShare = (DiskShare) session.connectShare(parts[0]);
-            subPath = parts.length > 1 ? parts[1] : "";
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        Uri uri = Uri.parse(getServer());
+        String[] parts = uri.getPath().substring(1).split("/", 2);
+        port = uri.getPort() != -1 ? uri.getPort() : SMBClient.DEFAULT_PORT;
+        subPath = parts.length > 1 ? parts[1] : "";
+        auth = getAuthentication(uri);
+        shareName = parts[0];
+        host = uri.getHost();
     }
 
     private AuthenticationContext getAuthentication(Uri uri) {
@@ -82,22 +115,6 @@ public class Drive {
         return new AuthenticationContext(username, password, null);
     }
 
-    public void release() {
-        try {
-            if (diskShare != null) diskShare.close();
-            if (session != null) session.close();
-            if (connection != null) connection.close();
-            if (smbClient != null) smbClient.close();
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            connection = null;
-            diskShare = null;
-            smbClient = null;
-            session = null;
-        }
-    }
-
     @Override
     public boolean equals(Object obj) {
         if (this == obj) return true;
@@ -0,0 +1,207 @@
+package com.github.catvod.bean.samba;
+
+import com.hierynomus.mssmb2.messages.SMB2Echo;
+import com.hierynomus.smbj.SMBClient;
+import com.hierynomus.smbj.auth.AuthenticationContext;
+import com.hierynomus.smbj.connection.Connection;
+import com.hierynomus.smbj.session.Session;
+import com.hierynomus.smbj.share.DiskEntry;
+import com.hierynomus.smbj.share.DiskShare;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class Pool {
+
+    private static final long KEEP_ALIVE = TimeUnit.MINUTES.toMillis(1);
+    private static final long IDLE = TimeUnit.MINUTES.toMillis(5);
+    private static final long TIMEOUT = TimeUnit.SECONDS.toMillis(10);
+    private static final int SIZE = 2;
+
+    private final Map<String, Entry> entries;
+    private ScheduledExecutorService executor;
+    private SMBClient client;
+
+    private static class Loader {
+        static volatile Pool INSTANCE = new Pool();
+    }
+
+    public static Pool get() {
+        return Loader.INSTANCE;
+    }
+
+    public Pool() {
+        this.entries = new ConcurrentHashMap<>();
+    }
+
+    private synchronized SMBClient getClient() {
+        if (client != null) return client;
+        executor = Executors.newSingleThreadScheduledExecutor();
+        executor.scheduleWithFixedDelay(this::check, KEEP_ALIVE, KEEP_ALIVE, TimeUnit.MILLISECONDS);
+        return client = new SMBClient();
+    }
+
+    public DiskShare share(String host, int port, AuthenticationContext auth, String share) throws IOException {
+        String key = host + ":" + port + "@" + auth.getDomain() + "\\" + auth.getUsername() + ":" + new String(auth.getPassword()).hashCode();
+        while (true) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                Entry created = new Entry(host, port, auth);
+                entry = entries.putIfAbsent(key, created);
+                if (entry == null) entry = created;
+            }
+            DiskShare disk = entry.share(share);
+            if (disk != null) return disk;
+            entries.remove(key, entry);
+        }
+    }
+
+    public void invalidate(DiskShare share) {
+        Session session = share.getTreeConnect().getSession();
+        for (Entry entry : entries.values()) entry.invalidate(session);
+    }
+
+    public <T extends DiskEntry> T open(T handle) {
+        Session session = handle.getDiskShare().getTreeConnect().getSession();
+        for (Entry entry : entries.values()) entry.acquire(session);
+        return handle;
+    }
+
+    public void close(DiskEntry handle) {
+        Session session = handle.getDiskShare().getTreeConnect().getSession();
+        for (Entry entry : entries.values()) entry.release(session);
+        try {
+            handle.closeNoWait();
+        } catch (Exception ignored) {
+        }
+    }
+
+    public synchronized void release() {
+        for (Entry entry : entries.values()) entry.retire();
+        entries.clear();
+        if (executor != null) executor.shutdownNow();
+        if (client != null) client.close();
+        executor = null;
+        client = null;
+    }
+
+    private void check() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().expire()) iterator.remove();
+        }
+    }
+
+    class Entry {
+
+        private final AuthenticationContext auth;
+        private final Map<Session, Integer> handles;
+        private final List<Session> sessions;
+        private final String host;
+        private final int port;
+        private Connection connection;
+        private boolean closed;
+        private volatile long used;
+        private int next;
+
+        public Entry(String host, int port, AuthenticationContext auth) {
+            this.handles = new HashMap<>();
+            this.sessions = new ArrayList<>();
+            this.host = host;
+            this.port = port;
+            this.auth = auth;
+        }
+
+        public synchronized DiskShare share(String name) throws IOException {
+            if (closed) return null;
+            used = System.currentTimeMillis();
+            if (connection == null || !connection.isConnected()) connect();
+            Session session = sessions.size() < SIZE ? open() : sessions.get(next++ % sessions.size());
+            return (DiskShare) session.connectShare(name);
+        }
+
+        private void connect() throws IOException {
+            close();
+            connection = getClient().connect(host, port);
+        }
+
+        private Session open() {
+            Session session = connection.authenticate(auth);
+            sessions.add(session);
+            return session;
+        }
+
+        public synchronized void acquire(Session session) {
+            if (!sessions.contains(session)) return;
+            Integer count = handles.get(session);
+            handles.put(session, count == null ? 1 : count + 1);
+            used = System.currentTimeMillis();
+        }
+
+        public synchronized void release(Session session) {
+            Integer count = handles.remove(session);
+            if (count == null) return;
+            if (count > 1) handles.put(session, count - 1);
+            used = System.currentTimeMillis();
+        }
+
+        public synchronized void invalidate(Session session) {
+            handles.remove(session);
+            if (!sessions.remove(session)) return;
+            close(session);
+            if (connection != null && !connection.isConnected()) close();
+        }
+
+        public synchronized boolean echo() {
+            try {
+                if (connection == null || !connection.isConnected()) return false;
+                connection.send(new SMB2Echo(connection.getNegotiatedProtocol().getDialect())).get(TIMEOUT, TimeUnit.MILLISECONDS);
+                return true;
+            } catch (Exception e) {
+                return false;
+            }
+        }
+
+        public synchronized boolean expire() {
+            if (!isIdle() && echo()) return false;
+            retire();
+            return true;
+        }
+
+        public synchronized boolean isIdle() {
+            return handles.isEmpty() && System.currentTimeMillis() - used > IDLE;
+        }
+
+        private void close(Session session) {
+            try {
+                session.close();
+            } catch (Exception ignored) {
+            }
+        }
+
+        public synchronized void retire() {
+            closed = true;
+            close();
+        }
+
+        public synchronized void close() {
+            for (Session session : sessions) close(session);
+            sessions.clear();
+            handles.clear();
+            try {
+                if (connection != null) connection.close();
+            } catch (Exception ignored) {
+            } finally {
+                connection = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.github.catvod.bean.samba;
+
+import com.github.catvod.utils.Sort;
+import com.hierynomus.msfscc.FileAttributes;
+import com.hierynomus.msfscc.fileinformation.FileIdBothDirectoryInformation;
+import com.hierynomus.protocol.commons.EnumWithValue;
+
+import java.util.List;
+
+public class Sorter implements Sort.Key<FileIdBothDirectoryInformation> {
+
+    private static final Sorter INSTANCE = new Sorter();
+
+    public static void sort(List<FileIdBothDirectoryInformation> items) {
+        Sort.sort(items, INSTANCE);
+    }
+
+    @Override
+    public String getName(FileIdBothDirectoryInformation item) {
+        return item.getFileName();
+    }
+
+    @Override
+    public long getSize(FileIdBothDirectoryInformation item) {
+        return item.getEndOfFile();
+    }
+
+    @Override
+    public long getTime(FileIdBothDirectoryInformation item) {
+        return item.getChangeTime().toEpochMillis();
+    }
+
+    @Override
+    public boolean isFolder(FileIdBothDirectoryInformation item) {
+        return EnumWithValue.EnumUtils.isSet(item.getFileAttributes(), FileAttributes.FILE_ATTRIBUTE_DIRECTORY);
+    }
+}
@@ -5,6 +5,7 @@ import android.text.TextUtils;
 
 import com.github.catvod.bean.Class;
 import com.github.catvod.bean.Vod;
+import com.github.catvod.net.OkHttp;
 import com.github.catvod.utils.Util;
 import com.google.gson.Gson;
 import com.google.gson.annotations.SerializedName;
@@ -13,9 +14,17 @@ import com.thegrizzlylabs.sardineandroid.DavResource;
 import com.thegrizzlylabs.sardineandroid.Sardine;
 import com.thegrizzlylabs.sardineandroid.impl.OkHttpSardine;
 
+import java.io.IOException;
 import java.lang.reflect.Type;
 import java.util.List;
 
+import okhttp3.Credentials;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.Route;
+
 public class Drive {
 
     @SerializedName("name")
@@ -28,7 +37,10 @@ public class Drive {
     private String pass;
     @SerializedName("path")
     private String path;
+    @SerializedName("index")
+    private Boolean index;
 
+    private OkHttpClient client;
     private Sardine webdav;
 
     public static List<Drive> arrayFrom(String str) {
@@ -60,6 +72,10 @@ public class Drive {
         return TextUtils.isEmpty(path) ? "" : path;
     }
 
+    public Boolean index() {
+        return index != null && index;
+    }
+
     public void setPath(String path) {
         this.path = TextUtils.isEmpty(path) ? "" : path;
     }
@@ -73,13 +89,28 @@ public class Drive {
         return webdav;
     }
 
+    public OkHttpClient getClient() {
+        if (client == null) client = OkHttp.secure().newBuilder().addInterceptor(this::intercept).authenticator(this::authenticate).build();
+        return client;
+    }
+
+    private Response intercept(Interceptor.Chain chain) throws IOException {
+        Request request = chain.request();
+        if (getUser().isEmpty() || request.header("Authorization") != null || !request.url().host().equalsIgnoreCase(Uri.parse(getServer()).getHost())) return chain.proceed(request);
+        return chain.proceed(request.newBuilder().header("Authorization", Credentials.basic(getUser(), getPass())).build());
+    }
+
+    private Request authenticate(Route route, Response response) {
+        if (getUser().isEmpty() || response.request().header("Authorization") != null) return null;
+        return response.request().newBuilder().header("Authorization", Credentials.basic(getUser(), getPass())).build();
+    }
+
     public Class toType() {
         return new Class(getName(), getName(), "1");
     }
 
     private void init() {
-        webdav = new OkHttpSardine();
-        webdav.setCredentials(getUser(), getPass());
+        webdav = new OkHttpSardine(getClient());
         setPath(Uri.parse(getServer()).getPath());
     }
 
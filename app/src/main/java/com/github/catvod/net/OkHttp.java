@@ -5,6 +5,7 @@ import android.annotation.SuppressLint;
 import com.github.catvod.crawler.Spider;
 
 import java.io.IOException;
+import java.security.KeyStore;
 import java.security.SecureRandom;
 import java.security.cert.X509Certificate;
 import java.util.List;
@@ -12,8 +13,10 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.TimeUnit;
 
+import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
 import javax.net.ssl.X509TrustManager;
 
 import okhttp3.Call;
@@ -29,8 +32,10 @@ public class OkHttp {
 
     public static final String POST = "POST";
     public static final String GET = "GET";
+    public static final String HEAD = "HEAD";
 
     private OkHttpClient client;
+    private OkHttpClient secure;
 
     private static class Loader {
         static volatile OkHttp INSTANCE = new OkHttp();
@@ -44,6 +49,14 @@ public class OkHttp {
         return client().newCall(new Request.Builder().url(url).tag(tag).build()).execute();
     }
 
+    public static Response newCall(String url, Map<String, String> header) throws IOException {
+        return client().newCall(new Request.Builder().url(url).headers(Headers.of(header)).build()).execute();
+    }
+
+    public static Response newCall(OkHttpClient client, String method, String url, Map<String, String> header) throws IOException {
+        return client.newCall(new Request.Builder().method(method, null).url(url).headers(Headers.of(header)).build()).execute();
+    }
+
     public static String string(String url) {
         return string(url, null);
     }
@@ -121,7 +134,7 @@ public class OkHttp {
         return client().newBuilder().connectTimeout(timeout, TimeUnit.MILLISECONDS).readTimeout(timeout, TimeUnit.MILLISECONDS).writeTimeout(timeout, TimeUnit.MILLISECONDS).build();
     }
 
-    private static OkHttpClient client() {
+    public static OkHttpClient client() {
         try {
             return Objects.requireNonNull(Spider.client());
         } catch (Throwable e) {
@@ -129,6 +142,20 @@ public class OkHttp {
         }
     }
 
+    public static OkHttpClient secure() {
+        if (get().secure != null) return get().secure;
+        try {
+            TrustManagerFactory factory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            factory.init((KeyStore) null);
+            X509TrustManager manager = (X509TrustManager) factory.getTrustManagers()[0];
+            SSLContext context = SSLContext.getInstance("TLS");
+            context.init(null, new TrustManager[]{manager}, null);
+            return get().secure = client().newBuilder().sslSocketFactory(context.getSocketFactory(), manager).hostnameVerifier(HttpsURLConnection.getDefaultHostnameVerifier()).build();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     private static Dns safeDns() {
         try {
             return Objects.requireNonNull(Spider.safeDns());
@@ -3,6 +3,8 @@ package com.github.catvod.spider;
 import android.content.Context;
 import android.net.Uri;
 import android.text.TextUtils;
+import android.util.Base64;
+import android.util.LruCache;
 
 import com.github.catvod.bean.Class;
 import com.github.catvod.bean.Filter;
@@ -12,14 +14,20 @@ import com.github.catvod.bean.Vod;
 import com.github.catvod.bean.alist.Drive;
 import com.github.catvod.bean.alist.Item;
 import com.github.catvod.bean.alist.Sorter;
+import com.github.catvod.bean.alist.Store;
 import com.github.catvod.crawler.Spider;
 import com.github.catvod.crawler.SpiderDebug;
 import com.github.catvod.net.OkHttp;
+import com.github.catvod.utils.Crypto;
+import com.github.catvod.utils.Image;
+import com.github.catvod.utils.Index;
+import com.github.catvod.utils.Path;
 import com.github.catvod.utils.Util;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -27,8 +35,12 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.TimeZone;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -36,6 +48,15 @@ import java.util.concurrent.TimeUnit;
 
 public class AList extends Spider {
 
+    private static final long TIMEOUT = TimeUnit.SECONDS.toMillis(5);
+    private static final long TTL = TimeUnit.MINUTES.toMillis(5);
+    private static final long URL_TTL = TimeUnit.MINUTES.toMillis(30);
+    private static final long URL_MARGIN = TimeUnit.MINUTES.toMillis(1);
+
+    private LruCache<String, Entry<List<Vod>>> results;
+    private LruCache<String, Entry<List<Item>>> cache;
+    private LruCache<String, Entry<String>> urls;
+    private Map<String, Index> indexes;
     private ExecutorService executor;
     private List<Drive> drives;
     private String ext;
@@ -62,17 +83,50 @@ public class AList extends Spider {
     }
 
     private String post(Drive drive, String url, String param, boolean retry) {
+        String token = drive.getToken();
         String response = OkHttp.post(url, param, drive.getHeader()).getBody();
         SpiderDebug.log(response);
-        if (retry && response.contains("Guest user is disabled") && login(drive)) return post(drive, url, param, false);
+        if (retry && isUnauthorized(response) && login(drive, token)) return post(drive, url, param, false);
         return response;
     }
 
+    private boolean isUnauthorized(String response) {
+        return response.contains("Guest user is disabled") || response.contains("token is expired") || response.contains("token is invalidated");
+    }
+
     @Override
     public void init(Context context, String extend) {
         executor = Executors.newCachedThreadPool();
+        results = new LruCache<>(64);
+        cache = new LruCache<>(64);
+        urls = new LruCache<>(256);
+        indexes = new HashMap<>();
         ext = extend;
         fetchRule();
+        startIndex();
+    }
+
+    private void startIndex() {
+        for (Drive drive : drives) {
+            if (!drive.index()) continue;
+            Index index = new Index(Path.tv("alist_" + Crypto.md5(drive.getServer() + drive.getName()))).load();
+            indexes.put(drive.getName(), index);
+            executor.execute(() -> crawl(drive, index));
+        }
+    }
+
+    private void crawl(Drive drive, Index index) {
+        try {
+            index.crawl(path -> getNodes(drive.check(), path), drive.check().getPath(), 2, 300);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private List<Index.Node> getNodes(Drive drive, String path) throws JSONException {
+        List<Index.Node> nodes = new ArrayList<>();
+        for (Item item : fetchList(drive, path)) if (item.isFolder() || !item.ignore(drive.isNew())) nodes.add(new Index.Node(item.getName(), item.getSize(), item.getTime(), item.isFolder()));
+        return nodes;
     }
 
     @Override
@@ -136,23 +190,74 @@ public class AList extends Spider {
 
     @Override
     public String searchContent(String keyword, boolean quick) throws Exception {
+        return search(keyword, 1);
+    }
+
+    @Override
+    public String searchContent(String keyword, boolean quick, String pg) throws Exception {
+        return search(keyword, Integer.parseInt(pg));
+    }
+
+    private String search(String keyword, int page) throws InterruptedException {
+        List<Drive> targets = new ArrayList<>();
+        for (Drive drive : drives) if (drive.search()) targets.add(drive.check());
+        Collections.sort(targets, (o1, o2) -> Long.compare(o1.getLatency(), o2.getLatency()));
+        CompletionService<List<Vod>> service = new ExecutorCompletionService<>(executor);
+        int pending = 0;
+        for (Drive drive : targets) {
+            Entry<List<Vod>> entry = results.get(getSearchKey(drive, keyword, page));
+            if (entry != null && !entry.isExpired(TTL)) continue;
+            service.submit(new Job(drive, keyword, page));
+            pending++;
+        }
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        for (; pending > 0; pending--) {
+            long wait = deadline - System.currentTimeMillis();
+            if (wait <= 0 || service.poll(wait, TimeUnit.MILLISECONDS) == null) break;
+        }
+        boolean more = false;
         List<Vod> list = new ArrayList<>();
-        List<Job> jobs = new ArrayList<>();
-        for (Drive drive : drives) if (drive.search()) jobs.add(new Job(drive.check(), keyword));
-        for (Future<List<Vod>> future : executor.invokeAll(jobs, 15, TimeUnit.SECONDS)) list.addAll(future.get());
-        return Result.string(list);
+        for (Drive drive : targets) {
+            Entry<List<Vod>> entry = results.get(getSearchKey(drive, keyword, page));
+            if (entry == null) continue;
+            more |= entry.more;
+            list.addAll(entry.value);
+        }
+        return Result.get().vod(list).page(page, more ? page + 1 : page, 0, 0).string();
+    }
+
+    private String getSearchKey(Drive drive, String keyword, int page) {
+        return drive.getName() + "@" + keyword + "@" + page;
     }
 
     @Override
-    public String playerContent(String flag, String id, List<String> vipFlags) {
+    public String playerContent(String flag, String id, List<String> vipFlags) throws Exception {
         String[] ids = decodeVodId(id).split("~~~");
-        String url = getDetail(ids[0]).getUrl();
-        return Result.get().url(url).header(getPlayHeader(url)).subs(getSubs(ids)).string();
+        List<Future<Sub>> subs = getSubs(ids);
+        String url = getUrl(ids[0]);
+        return Result.get().url(url).header(getPlayHeader(url)).subs(getSubs(subs)).string();
+    }
+
+    @Override
+    public String action(String action) {
+        if (TextUtils.isEmpty(action) || "refresh".equals(action)) {
+            cache.evictAll();
+        } else {
+            String key = action.contains("/") ? action.substring(0, action.indexOf("/")) : action;
+            String path = action.contains("/") ? action.substring(action.indexOf("/")) : "";
+            if (drives.indexOf(new Drive(key)) == -1) return Result.notify("刷新完成");
+            Drive drive = getDrive(key);
+            String prefix = drive.getName() + (path.startsWith(drive.getPath()) ? path : drive.getPath() + path);
+            for (String item : cache.snapshot().keySet()) if (item.startsWith(prefix)) cache.remove(item);
+        }
+        return Result.notify("刷新完成");
     }
 
     @Override
     public void destroy() {
         executor.shutdownNow();
+        cache.evictAll();
+        urls.evictAll();
     }
 
     private static Map<String, String> getPlayHeader(String url) {
@@ -167,17 +272,34 @@ public class AList extends Spider {
         }
     }
 
-    private boolean login(Drive drive) {
+    private boolean login(Drive drive, String stale) {
+        if (drive.getLogin() == null) return false;
+        synchronized (drive) {
+            if (!drive.getToken().equals(stale)) return true;
+            try {
+                JSONObject params = new JSONObject();
+                params.put("username", drive.getLogin().getUsername());
+                params.put("password", drive.getLogin().getPassword());
+                String response = OkHttp.post(drive.loginApi(), params.toString());
+                String token = new JSONObject(response).getJSONObject("data").getString("token");
+                Store.get().put(drive.getTokenKey(), token, getExpire(token));
+                drive.setToken(token);
+                return true;
+            } catch (Exception e) {
+                Store.get().remove(drive.getTokenKey());
+                e.printStackTrace();
+                return false;
+            }
+        }
+    }
+
+    private long getExpire(String token) {
         try {
-            JSONObject params = new JSONObject();
-            params.put("username", drive.getLogin().getUsername());
-            params.put("password", drive.getLogin().getPassword());
-            String response = OkHttp.post(drive.loginApi(), params.toString());
-            drive.setToken(new JSONObject(response).getJSONObject("data").getString("token"));
-            return true;
+            String[] split = token.split("\\.");
+            String payload = new String(Base64.decode(split[1], Base64.URL_SAFE | Base64.NO_PADDING | Base64.NO_WRAP));
+            return new JSONObject(payload).getLong("exp") * 1000 - TimeUnit.MINUTES.toMillis(5);
         } catch (Exception e) {
-            e.printStackTrace();
-            return false;
+            return System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1);
         }
     }
 
@@ -197,17 +319,46 @@ public class AList extends Spider {
         }
     }
 
+    private String getUrl(String id) {
+        Entry<String> entry = urls.get(id);
+        if (entry != null && System.currentTimeMillis() < getExpire(entry)) return entry.value;
+        String url = getDetail(id).getUrl();
+        if (!url.isEmpty()) urls.put(id, new Entry<>(url));
+        return url;
+    }
+
+    private long getExpire(Entry<String> entry) {
+        long expire = entry.time + URL_TTL;
+        try {
+            Uri uri = Uri.parse(entry.value);
+            String sign = uri.getQueryParameter("sign");
+            String date = uri.getQueryParameter("X-Amz-Date");
+            String amz = uri.getQueryParameter("X-Amz-Expires");
+            for (String name : Arrays.asList("x-oss-expires", "Expires", "expires", "e")) {
+                String value = uri.getQueryParameter(name);
+                if (value != null && value.matches("\\d{10}")) expire = Math.min(expire, Long.parseLong(value) * 1000);
+            }
+            if (sign != null && sign.contains(":")) {
+                long value = Long.parseLong(sign.substring(sign.lastIndexOf(":") + 1));
+                if (value > 0) expire = Math.min(expire, value * 1000);
+            }
+            if (date != null && amz != null) {
+                SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd'T'HHmmss'Z'", Locale.US);
+                format.setTimeZone(TimeZone.getTimeZone("UTC"));
+                expire = Math.min(expire, format.parse(date).getTime() + Long.parseLong(amz) * 1000);
+            }
+        } catch (Exception ignored) {
+        }
+        return expire - URL_MARGIN;
+    }
+
     private List<Item> getList(String id, boolean filter) {
         try {
             String key = id.contains("/") ? id.substring(0, id.indexOf("/")) : id;
             String path = id.contains("/") ? id.substring(id.indexOf("/")) : "";
             Drive drive = getDrive(key);
             path = path.startsWith(drive.getPath()) ? path : drive.getPath() + path;
-            JSONObject params = new JSONObject();
-            params.put("path", path);
-            params.put("password", drive.findPass(path));
-            String response = post(drive, drive.listApi(), params.toString());
-            List<Item> items = Item.arrayFrom(getListJson(drive.isNew(), response));
+            List<Item> items = new ArrayList<>(getList(drive, path));
             Iterator<Item> iterator = items.iterator();
             if (filter) while (iterator.hasNext()) if (iterator.next().ignore(drive.isNew())) iterator.remove();
             return items;
@@ -216,6 +367,38 @@ public class AList extends Spider {
         }
     }
 
+    private List<Item> getList(Drive drive, String path) throws JSONException {
+        String key = getCacheKey(drive, path);
+        Entry<List<Item>> entry = cache.get(key);
+        if (entry != null && isFresh(drive, path, entry)) return entry.value;
+        List<Item> items = fetchList(drive, path);
+        cache.put(key, new Entry<>(items));
+        return items;
+    }
+
+    private List<Item> fetchList(Drive drive, String path) throws JSONException {
+        JSONObject params = new JSONObject();
+        params.put("path", path);
+        params.put("password", drive.findPass(path));
+        String response = post(drive, drive.listApi(), params.toString());
+        List<Item> items = Item.arrayFrom(getListJson(drive.isNew(), response));
+        return items == null ? Collections.emptyList() : items;
+    }
+
+    private String getCacheKey(Drive drive, String path) {
+        return drive.getName() + path + "@" + drive.findPass(path);
+    }
+
+    private boolean isFresh(Drive drive, String path, Entry<List<Item>> entry) {
+        if (entry.isExpired(TTL)) return false;
+        if (!path.contains("/")) return true;
+        Entry<List<Item>> parent = cache.get(getCacheKey(drive, path.substring(0, path.lastIndexOf("/"))));
+        if (parent == null) return true;
+        String name = path.substring(path.lastIndexOf("/") + 1);
+        for (Item item : parent.value) if (item.getName().equals(name)) return item.getTime() <= entry.time;
+        return true;
+    }
+
     private String getListJson(boolean isNew, String response) throws JSONException {
         if (isNew) {
             return new JSONObject(response).getJSONObject("data").getJSONArray("content").toString();
@@ -249,40 +432,101 @@ public class AList extends Spider {
         return sb.toString();
     }
 
-    private List<Sub> getSubs(String[] ids) {
-        List<Sub> sub = new ArrayList<>();
+    private List<Future<Sub>> getSubs(String[] ids) {
+        List<Future<Sub>> futures = new ArrayList<>();
         for (String text : ids) {
             if (!text.contains("@@@")) continue;
             String[] split = text.split("@@@");
             String name = split[0];
             String ext = split[1];
-            String url = getDetail(split[2]).getUrl();
-            sub.add(Sub.create().name(name).ext(ext).url(url));
+            futures.add(executor.submit(() -> Sub.create().name(name).ext(ext).url(getUrl(split[2]))));
+        }
+        return futures;
+    }
+
+    private List<Sub> getSubs(List<Future<Sub>> futures) {
+        List<Sub> sub = new ArrayList<>();
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        for (Future<Sub> future : futures) {
+            try {
+                sub.add(future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS));
+            } catch (Exception e) {
+                future.cancel(true);
+            }
         }
         return sub;
     }
 
+    static class Entry<T> {
+
+        private final T value;
+        private final long time;
+        private final boolean more;
+
+        public Entry(T value) {
+            this(value, false);
+        }
+
+        public Entry(T value, boolean more) {
+            this.value = value;
+            this.more = more;
+            this.time = System.currentTimeMillis();
+        }
+
+        public boolean isExpired(long ttl) {
+            return System.currentTimeMillis() - time > ttl;
+        }
+    }
+
     class Job implements Callable<List<Vod>> {
 
         private final Drive drive;
         private final String keyword;
+        private final int page;
+        private boolean more;
 
-        public Job(Drive drive, String keyword) {
+        public Job(Drive drive, String keyword, int page) {
             this.drive = drive;
             this.keyword = keyword;
+            this.page = page;
         }
 
         @Override
         public List<Vod> call() {
+            long start = System.currentTimeMillis();
             try {
-                List<Vod> list = new ArrayList<>();
-                String response = post(drive, drive.searchApi(), drive.params(keyword));
-                List<Item> items = Item.arrayFrom(getSearchJson(drive.isNew(), response));
-                for (Item item : items) if (!item.ignore(drive.isNew())) list.add(item.getVod(drive));
+                List<Vod> list;
+                Index index = indexes.get(drive.getName());
+                if (index != null && index.isReady()) list = searchIndex(index);
+                else if (page > 1 && !drive.isNew()) list = Collections.emptyList();
+                else list = searchApi();
+                results.put(getSearchKey(drive, keyword, page), new Entry<>(list, more));
                 return list;
             } catch (Exception e) {
                 return Collections.emptyList();
+            } finally {
+                drive.setLatency(System.currentTimeMillis() - start);
             }
         }
+
+        private List<Vod> searchIndex(Index index) {
+            List<Vod> list = new ArrayList<>();
+            List<Index.Node> nodes = index.search(keyword);
+            more = nodes.size() > page * Drive.PAGE_SIZE;
+            for (int i = (page - 1) * Drive.PAGE_SIZE; i < Math.min(nodes.size(), page * Drive.PAGE_SIZE); i++) {
+                Index.Node node = nodes.get(i);
+                list.add(new Vod(drive.getName() + node.getFullPath(), node.getName(), node.isFolder() ? Image.FOLDER : "", drive.getName(), node.isFolder()));
+            }
+            return list;
+        }
+
+        private List<Vod> searchApi() throws JSONException {
+            List<Vod> list = new ArrayList<>();
+            String response = post(drive, drive.searchApi(), drive.params(keyword, page));
+            List<Item> items = Item.arrayFrom(getSearchJson(drive.isNew(), response));
+            more = items.size() >= Drive.PAGE_SIZE;
+            for (Item item : items) if (!item.ignore(drive.isNew())) list.add(item.getVod(drive));
+            return list;
+        }
     }
-}
\ No newline at end of file
+}
@@ -2,6 +2,7 @@ package com.github.catvod.spider;
 
 import android.content.Context;
 import android.text.TextUtils;
+import android.util.LruCache;
 
 import com.github.catvod.bean.Class;
 import com.github.catvod.bean.Danmaku;
@@ -10,11 +11,16 @@ import com.github.catvod.bean.Result;
 import com.github.catvod.bean.Vod;
 import com.github.catvod.bean.bili.Dash;
 import com.github.catvod.bean.bili.Data;
+import com.github.catvod.bean.bili.Dm;
 import com.github.catvod.bean.bili.Media;
+import com.github.catvod.bean.bili.Mpd;
 import com.github.catvod.bean.bili.Page;
+import com.github.catvod.bean.bili.Relay;
 import com.github.catvod.bean.bili.Resp;
-import com.github.catvod.bean.bili.Wbi;
+import com.github.catvod.bean.bili.Selector;
+import com.github.catvod.bean.bili.Session;
 import com.github.catvod.crawler.Spider;
+import com.github.catvod.crawler.SpiderDebug;
 import com.github.catvod.net.OkHttp;
 import com.github.catvod.utils.Json;
 import com.github.catvod.utils.Path;
@@ -24,14 +30,23 @@ import com.google.gson.JsonObject;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import okhttp3.Response;
 
 /**
  * @author ColaMint & FongMi & 唐三
@@ -39,12 +54,18 @@ import java.util.Map;
 public class Bili extends Spider {
 
     private static final String COOKIE = "buvid3=84B0395D-C9F2-C490-E92E-A09AB48FE26E71636infoc";
+    private static final long TIMEOUT = TimeUnit.SECONDS.toMillis(10);
+    private static final long MARGIN = TimeUnit.MINUTES.toMillis(1);
+    private LruCache<String, byte[]> danmakus;
+    private LruCache<String, Data> plays;
+    private Selector selector;
+    private Relay relay;
+    private ExecutorService executor;
     private String cookie;
 
+    private volatile Session session;
+    private Future<?> refresh;
     private JsonObject extend;
-    private boolean login;
-    private boolean isVip;
-    private Wbi wbi;
 
     private Map<String, String> getHeader() {
         Map<String, String> headers = new HashMap<>();
@@ -68,14 +89,37 @@ public class Bili extends Spider {
         return items;
     }
 
+    private boolean isRelay() {
+        return extend.has("relay") && extend.get("relay").getAsBoolean();
+    }
+
+    private String getRelayUrl(String aid, String cid) {
+        return Proxy.getUrl() + "?do=csp&siteKey=" + siteKey + "&aid=" + aid + "&cid=" + cid + "&type=media";
+    }
+
     private File getCache() {
         return Path.tv("bilibili");
     }
 
+    private File getSessionCache() {
+        return Path.tv("bilibili_session");
+    }
+
     @Override
     public void init(Context context, String extend) {
+        this.executor = Executors.newCachedThreadPool();
+        this.plays = new LruCache<>(32);
+        this.relay = new Relay(16 * 1024 * 1024);
+        this.selector = new Selector();
+        this.danmakus = new LruCache<>(8 * 1024 * 1024) {
+            @Override
+            protected int sizeOf(String key, byte[] value) {
+                return value.length;
+            }
+        };
         this.extend = Json.safeObject(extend);
         setCookie();
+        setSession();
     }
 
     @Override
@@ -103,12 +147,17 @@ public class Bili extends Spider {
 
     @Override
     public String categoryContent(String tid, String pg, boolean filter, HashMap<String, String> extend) {
-        if (tid.endsWith("/{pg}")) {
+        if (tid.endsWith("/related")) {
+            List<Vod> list = new ArrayList<>();
+            String json = OkHttp.string("https://api.bilibili.com/x/web-interface/archive/related?bvid=" + tid.split("/")[0], getHeader());
+            for (Resp.Result item : Resp.Result.arrayFrom(getRelated(json))) list.add(item.getVod());
+            return Result.get().vod(list).page().string();
+        } else if (tid.endsWith("/{pg}")) {
             LinkedHashMap<String, Object> params = new LinkedHashMap<>();
             params.put("mid", tid.split("/")[0]);
             params.put("pn", pg);
             List<Vod> list = new ArrayList<>();
-            String json = OkHttp.string("https://api.bilibili.com/x/space/wbi/arc/search?" + wbi.getQuery(params), getHeader());
+            String json = OkHttp.string("https://api.bilibili.com/x/space/wbi/arc/search?" + getSession().getWbi().getQuery(params), getHeader());
             for (Resp.Result item : Resp.Result.arrayFrom(Resp.objectFrom(json).getData().getList().getAsJsonObject().get("vlist"))) list.add(item.getVod());
             return Result.string(list);
         } else {
@@ -126,54 +175,26 @@ public class Bili extends Spider {
 
     @Override
     public String detailContent(List<String> ids) {
-        if (!login) checkLogin();
-
         String[] split = ids.get(0).split("@");
         String bvid = split[0];
         String aid = split[1];
 
-        String api = "https://api.bilibili.com/x/web-interface/view?aid=" + aid;
-        String json = OkHttp.string(api, getHeader());
-        Data detail = Resp.objectFrom(json).getData();
+        Data detail = Resp.objectFrom(OkHttp.string("https://api.bilibili.com/x/web-interface/view?aid=" + aid, getHeader())).getData();
+        executor.execute(() -> getPlay(aid, detail.getCid()));
+
         Vod vod = new Vod();
         vod.setVodId(ids.get(0));
         vod.setVodPic(detail.getPic());
         vod.setVodName(detail.getTitle());
         vod.setTypeName(detail.getType());
         vod.setVodContent(detail.getDesc());
-        vod.setVodDirector(detail.getOwner().getFormat());
+        vod.setVodDirector(detail.getOwner().getFormat() + " " + getLink(bvid + "/related", "相关"));
         vod.setVodRemarks(detail.getDuration() / 60 + "分鐘");
 
-        List<String> acceptDesc = new ArrayList<>();
-        List<Integer> acceptQuality = new ArrayList<>();
-        api = "https://api.bilibili.com/x/player/playurl?avid=" + aid + "&cid=" + detail.getCid() + "&qn=127&fnval=4048&fourk=1";
-        json = OkHttp.string(api, getHeader());
-        Data play = Resp.objectFrom(json).getData();
-        for (int i = 0; i < play.getAcceptQuality().size(); i++) {
-            int qn = play.getAcceptQuality().get(i);
-            if (!login && qn > 32) continue;
-            if (!isVip && qn > 80) continue;
-            acceptQuality.add(play.getAcceptQuality().get(i));
-            acceptDesc.add(play.getAcceptDescription().get(i));
-        }
-
-        List<String> episode = new ArrayList<>();
-        LinkedHashMap<String, String> flag = new LinkedHashMap<>();
-        for (Page page : detail.getPages()) episode.add(page.getPart() + "$" + aid + "+" + page.getCid() + "+" + TextUtils.join(":", acceptQuality) + "+" + TextUtils.join(":", acceptDesc));
-        flag.put("B站", TextUtils.join("#", episode));
-
-        episode = new ArrayList<>();
-        api = "https://api.bilibili.com/x/web-interface/archive/related?bvid=" + bvid;
-        json = OkHttp.string(api, getHeader());
-        JsonArray array = Json.parse(json).getAsJsonObject().getAsJsonArray("data");
-        for (int i = 0; i < array.size(); i++) {
-            JsonObject object = array.get(i).getAsJsonObject();
-            episode.add(object.get("title").getAsString() + "$" + object.get("aid").getAsInt() + "+" + object.get("cid").getAsInt() + "+" + TextUtils.join(":", acceptQuality) + "+" + TextUtils.join(":", acceptDesc));
-        }
-        flag.put("相关", TextUtils.join("#", episode));
-
-        vod.setVodPlayFrom(TextUtils.join("$$$", flag.keySet()));
-        vod.setVodPlayUrl(TextUtils.join("$$$", flag.values()));
+        StringBuilder episode = new StringBuilder(detail.getPages().size() * 32);
+        for (Page page : detail.getPages()) episode.append(page.getPart()).append("$").append(aid).append("+").append(page.getCid()).append("#");
+        vod.setVodPlayFrom("B站");
+        vod.setVodPlayUrl(Util.substring(episode.toString()));
         return Result.string(vod);
     }
 
@@ -192,31 +213,35 @@ public class Bili extends Spider {
         String[] ids = id.split("\\+");
         String aid = ids[0];
         String cid = ids[1];
-        String[] acceptDesc = ids[3].split(":");
-        String[] acceptQuality = ids[2].split(":");
+        List<String> acceptDesc = new ArrayList<>();
+        List<String> acceptQuality = new ArrayList<>();
+        if (ids.length > 3) {
+            acceptDesc.addAll(Arrays.asList(ids[3].split(":")));
+            acceptQuality.addAll(Arrays.asList(ids[2].split(":")));
+        } else {
+            Data play = getPlay(aid, cid);
+            setQuality(play, acceptQuality, acceptDesc);
+            selector.sort(play.getDash(), acceptQuality, acceptDesc);
+        }
         List<String> url = new ArrayList<>();
-        String dan = "https://api.bilibili.com/x/v1/dm/list.so?oid=".concat(cid);
-        for (int i = 0; i < acceptDesc.length; i++) {
-            url.add(acceptDesc[i]);
-            url.add(Proxy.getUrl(siteKey, "&aid=" + aid + "&cid=" + cid + "&qn=" + acceptQuality[i] + "&type=mpd"));
+        String dan = Proxy.getUrl() + "?do=csp&siteKey=" + siteKey + "&cid=" + cid + "&type=danmaku";
+        for (int i = 0; i < acceptDesc.size(); i++) {
+            url.add(acceptDesc.get(i));
+            url.add(Proxy.getUrl(siteKey, "&aid=" + aid + "&cid=" + cid + "&qn=" + acceptQuality.get(i) + "&type=mpd"));
         }
+        if (isRelay() && !acceptQuality.isEmpty()) executor.execute(() -> prefetch(aid, cid, acceptQuality.get(0)));
         return Result.get().url(url).danmaku(Arrays.asList(Danmaku.create().name("B站").url(dan))).dash().header(getHeader()).string();
     }
 
     @Override
-    public Object[] proxy(Map<String, String> params) {
+    public Object[] proxy(Map<String, String> params) throws IOException {
+        if ("danmaku".equals(params.get("type"))) return getDanmaku(params.get("cid"));
+        if ("media".equals(params.get("type"))) return getMedia(params);
         String aid = params.get("aid");
         String cid = params.get("cid");
         String qn = params.get("qn");
-        String api = "https://api.bilibili.com/x/player/playurl?avid=" + aid + "&cid=" + cid + "&qn=" + qn + "&fnval=4048&fourk=1";
-        String json = OkHttp.string(api, getHeader());
-        Resp resp = Resp.objectFrom(json);
-        Dash dash = resp.getData().getDash();
-        StringBuilder video = new StringBuilder();
-        StringBuilder audio = new StringBuilder();
-        findAudio(dash, audio);
-        findVideo(dash, video, qn);
-        String mpd = getMpd(dash, video.toString(), audio.toString());
+        Dash dash = getPlay(aid, cid).getDash();
+        String mpd = Mpd.create(dash, selector.find(dash, qn), isRelay() ? getRelayUrl(aid, cid) : null);
         Object[] result = new Object[3];
         result[0] = 200;
         result[1] = "application/dash+xml";
@@ -224,58 +249,141 @@ public class Bili extends Spider {
         return result;
     }
 
-    private HashMap<String, String> getAudioFormat() {
-        HashMap<String, String> audios = new HashMap<>();
-        audios.put("30280", "192000");
-        audios.put("30232", "132000");
-        audios.put("30216", "64000");
-        return audios;
+    private void setQuality(Data play, List<String> acceptQuality, List<String> acceptDesc) {
+        Session session = getSession();
+        for (int i = 0; i < play.getAcceptQuality().size(); i++) {
+            int qn = play.getAcceptQuality().get(i);
+            if (!session.isLogin() && qn > 32) continue;
+            if (!session.isVip() && qn > 80) continue;
+            acceptQuality.add(String.valueOf(qn));
+            acceptDesc.add(play.getAcceptDescription().get(i));
+        }
     }
 
-    private void findAudio(Dash dash, StringBuilder sb) {
-        for (Media audio : dash.getAudio()) {
-            for (String key : getAudioFormat().keySet()) {
-                if (audio.getId().equals(key)) {
-                    sb.append(getMedia(audio));
-                }
-            }
+    private Object[] getMedia(Map<String, String> params) throws IOException {
+        String aid = params.get("aid");
+        String cid = params.get("cid");
+        String range = params.get("range");
+        Media media = findMedia(getPlay(aid, cid).getDash(), params.get("id"));
+        if (media == null) return null;
+        Object[] result = relay.get(aid + "+" + cid + "+" + media.getKey(), range, media.getMimeType());
+        if (result != null) return result;
+        Map<String, String> header = getHeader();
+        if (range != null) header.put("Range", range);
+        Response res = OkHttp.newCall(media.getBaseUrl(), header);
+        Map<String, String> headers = new HashMap<>();
+        for (String name : Arrays.asList("Accept-Ranges", "Content-Length", "Content-Range")) if (res.header(name) != null) headers.put(name, res.header(name));
+        result = new Object[4];
+        result[0] = res.code();
+        result[1] = media.getMimeType();
+        result[2] = selector.wrap(res.body().byteStream());
+        result[3] = headers;
+        return result;
+    }
+
+    private Media findMedia(Dash dash, String key) {
+        for (Media media : dash.getVideo()) if (media.getKey().equals(key)) return media;
+        for (Media media : dash.getAudio()) if (media.getKey().equals(key)) return media;
+        return null;
+    }
+
+    private void prefetch(String aid, String cid, String qn) {
+        Dash dash = getPlay(aid, cid).getDash();
+        Media video = selector.find(dash, qn);
+        if (video != null) prefetch(aid + "+" + cid + "+" + video.getKey(), video);
+        for (Media media : dash.getAudio()) if (Mpd.isAudio(media)) prefetch(aid + "+" + cid + "+" + media.getKey(), media);
+    }
+
+    private void prefetch(String key, Media media) {
+        if (relay.has(key) || media.getHeadEnd() < 0) return;
+        Map<String, String> header = getHeader();
+        header.put("Range", "bytes=0-" + media.getHeadEnd());
+        try (Response res = OkHttp.newCall(media.getBaseUrl(), header)) {
+            relay.put(key, res);
+        } catch (Exception e) {
+            SpiderDebug.log(e);
         }
     }
 
-    private void findVideo(Dash dash, StringBuilder sb, String qn) {
-        for (Media video : dash.getVideo()) {
-            if (video.getId().equals(qn)) {
-                sb.append(getMedia(video));
-            }
+    private Object[] getDanmaku(String cid) {
+        int max = extend.has("danmaku") ? extend.get("danmaku").getAsInt() : 0;
+        String key = cid + "@" + max;
+        byte[] data = danmakus.get(key);
+        if (data == null && (data = fetchDanmaku(cid, max)) != null) danmakus.put(key, data);
+        if (data == null) data = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><i></i>".getBytes();
+        Object[] result = new Object[3];
+        result[0] = 200;
+        result[1] = "text/xml; charset=utf-8";
+        result[2] = new ByteArrayInputStream(data);
+        return result;
+    }
+
+    private byte[] fetchDanmaku(String cid, int max) {
+        try (Response res = OkHttp.newCall("https://api.bilibili.com/x/v1/dm/list.so?oid=" + cid, cid)) {
+            InputStream is = res.body().byteStream();
+            if ("deflate".equalsIgnoreCase(res.header("Content-Encoding"))) is = new InflaterInputStream(is, new Inflater(true));
+            return Dm.parse(is, max);
+        } catch (Exception e) {
+            return null;
         }
     }
 
-    private String getMedia(Media media) {
-        if (media.getMimeType().startsWith("video")) {
-            return getAdaptationSet(media, String.format(Locale.getDefault(), "height='%s' width='%s' frameRate='%s' sar='%s'", media.getHeight(), media.getWidth(), media.getFrameRate(), media.getSar()));
-        } else if (media.getMimeType().startsWith("audio")) {
-            return getAdaptationSet(media, String.format("numChannels='2' sampleRate='%s'", getAudioFormat().get(media.getId())));
-        } else {
-            return "";
+    private Data getPlay(String aid, String cid) {
+        Data play = plays.get(aid + "+" + cid);
+        if (play != null && play.getDash().getDeadline() * 1000 - MARGIN > System.currentTimeMillis()) return play;
+        String api = "https://api.bilibili.com/x/player/playurl?avid=" + aid + "&cid=" + cid + "&qn=127&fnval=4048&fourk=1";
+        play = Resp.objectFrom(OkHttp.string(api, getHeader())).getData();
+        putPlay(aid, cid, play);
+        return play;
+    }
+
+    private void putPlay(String aid, String cid, Data play) {
+        if (play.getDash().getDeadline() > 0) plays.put(aid + "+" + cid, play);
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    private String getLink(String id, String name) {
+        return String.format("[a=cr:{\"id\":\"%s\",\"name\":\"%s\"}/]%s[/a]", id, name, name);
+    }
+
+    private JsonArray getRelated(String json) {
+        try {
+            JsonArray array = Json.parse(json).getAsJsonObject().getAsJsonArray("data");
+            return array == null ? new JsonArray() : array;
+        } catch (Exception e) {
+            return new JsonArray();
         }
     }
 
-    private String getAdaptationSet(Media media, String params) {
-        String id = media.getId() + "_" + media.getCodecId();
-        String type = media.getMimeType().split("/")[0];
-        String baseUrl = media.getBaseUrl().replace("&", "&amp;");
-        return String.format(Locale.getDefault(), "<AdaptationSet>\n" + "<ContentComponent contentType=\"%s\"/>\n" + "<Representation id=\"%s\" bandwidth=\"%s\" codecs=\"%s\" mimeType=\"%s\" %s startWithSAP=\"%s\">\n" + "<BaseURL>%s</BaseURL>\n" + "<SegmentBase indexRange=\"%s\">\n" + "<Initialization range=\"%s\"/>\n" + "</SegmentBase>\n" + "</Representation>\n" + "</AdaptationSet>", type, id, media.getBandWidth(), media.getCodecs(), media.getMimeType(), params, media.getStartWithSap(), baseUrl, media.getSegmentBase().getIndexRange(), media.getSegmentBase().getInitialization());
+    private void setSession() {
+        session = Session.objectFrom(Path.read(getSessionCache()));
+        if (!session.isFresh(cookie)) refreshSession();
     }
 
-    private String getMpd(Dash dash, String videoList, String audioList) {
-        return String.format(Locale.getDefault(), "<MPD xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns=\"urn:mpeg:dash:schema:mpd:2011\" xsi:schemaLocation=\"urn:mpeg:dash:schema:mpd:2011 DASH-MPD.xsd\" type=\"static\" mediaPresentationDuration=\"PT%sS\" minBufferTime=\"PT%sS\" profiles=\"urn:mpeg:dash:profile:isoff-on-demand:2011\">\n" + "<Period duration=\"PT%sS\" start=\"PT0S\">\n" + "%s\n" + "%s\n" + "</Period>\n" + "</MPD>", dash.getDuration(), dash.getMinBufferTime(), dash.getDuration(), videoList, audioList);
+    private Session getSession() {
+        if (!session.isFresh(cookie)) refreshSession();
+        if (!session.isMatch(cookie)) await(refresh);
+        return session;
     }
 
-    private void checkLogin() {
-        String json = OkHttp.string("https://api.bilibili.com/x/web-interface/nav", getHeader());
-        Data data = Resp.objectFrom(json).getData();
-        login = data.isLogin();
-        isVip = data.isVip();
-        wbi = data.getWbi();
+    private synchronized void refreshSession() {
+        if (refresh != null && !refresh.isDone()) return;
+        refresh = executor.submit(() -> {
+            Session item = Session.create(cookie, Resp.objectFrom(OkHttp.string("https://api.bilibili.com/x/web-interface/nav", getHeader())).getData());
+            if (!item.isLoaded()) return;
+            Path.write(getSessionCache(), item.toString().getBytes());
+            session = item;
+        });
+    }
+
+    private void await(Future<?> future) {
+        try {
+            future.get(TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (Exception ignored) {
+        }
     }
 }
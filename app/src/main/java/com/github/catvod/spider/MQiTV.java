@@ -2,18 +2,31 @@ package com.github.catvod.spider;
 
 import android.content.Context;
 
+import com.github.catvod.bean.live.Playlist;
 import com.github.catvod.bean.mqitv.Config;
 import com.github.catvod.bean.mqitv.Data;
+import com.github.catvod.bean.mqitv.User;
 import com.github.catvod.crawler.Spider;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 public class MQiTV extends Spider {
 
+    private static final long TIMEOUT = TimeUnit.SECONDS.toMillis(5);
+    private static final int RETRY = 3;
+
+    private ScheduledExecutorService scheduler;
+    private ExecutorService executor;
     private List<Config> configs;
 
     public List<Config> getConfigs() {
@@ -22,43 +35,66 @@ public class MQiTV extends Spider {
 
     @Override
     public void init(Context context, String extend) {
+        scheduler = Executors.newScheduledThreadPool(2);
+        executor = Executors.newCachedThreadPool();
         configs = Config.arrayFrom(extend);
     }
 
     @Override
-    public String liveContent(String url) {
-        StringBuilder sb = new StringBuilder();
+    public String liveContent(String url) throws IOException {
+        loadData();
+        int count = 0;
+        for (Config config : getConfigs()) count += config.getLoaded().size();
+        Playlist playlist = Playlist.create(count);
         for (Config config : getConfigs()) {
-            if (config.getData().isEmpty()) continue;
-            sb.append(config.getName()).append(",#genre#").append("\n");
+            if (config.getLoaded().isEmpty()) continue;
+            playlist.group(config.getName());
             boolean hasPort = config.getUri().getPort() != -1;
-            for (Data item : config.getData()) {
+            for (Data item : config.getLoaded()) {
                 String port = hasPort ? item.getPort() : "5003";
-                String proxy = Proxy.getUrl(siteKey, "&id=" + item.getId() + "&ip=" + config.getUrl() + "&playing=" + item.getPlaying() + "&port=" + port + "&type=m3u8");
-                sb.append(item.getName()).append(",").append(proxy).append("\n");
+                playlist.channel(item.getName(), Proxy.getUrl(siteKey, "&id=" + item.getId() + "&ip=" + config.getUrl() + "&playing=" + item.getPlaying() + "&port=" + port + "&type=m3u8"));
             }
         }
-        return sb.toString();
+        return playlist.string();
+    }
+
+    private void loadData() {
+        try {
+            List<Callable<List<Data>>> jobs = new ArrayList<>();
+            for (Config config : getConfigs()) if (config.getLoaded().isEmpty()) jobs.add(config::getData);
+            if (!jobs.isEmpty()) executor.invokeAll(jobs, TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ignored) {
+        }
     }
 
     @Override
     public Object[] proxy(Map<String, String> params) {
+        String id = params.get("id");
         String ip = params.get("ip");
         String port = params.get("port");
         String playing = params.get("playing");
         if (port == null) port = "5003";
         Config config = getConfig(ip);
-        String token = config.getUser().getToken();
-        if (token.isEmpty()) {
-            return get302(config.getPlayUrl(port, playing));
-        } else {
-            String id = params.get("id");
-            String auth = config.getAuth(id, token);
-            if (!"OK".equals(auth)) config.clear();
-            if (!"OK".equals(auth)) return proxy(params);
-            String m3u8 = config.getM3U8(id, token, port);
+        for (int i = 0; i < RETRY; i++) {
+            User user = config.getUser(scheduler);
+            if (user.getToken().isEmpty()) break;
+            String auth = config.getAuth(id, user.getToken());
+            if (!"OK".equals(auth)) {
+                config.getPool(scheduler).fail(user);
+                continue;
+            }
+            user.success();
+            String m3u8 = config.getM3U8(id, user.getToken(), port);
             return m3u8.isEmpty() ? get302(config.getPlayUrl(port, playing)) : get200(m3u8);
         }
+        return get302(config.getPlayUrl(port, playing));
+    }
+
+    @Override
+    public void destroy() {
+        for (Config config : getConfigs()) config.release();
+        scheduler.shutdownNow();
+        executor.shutdownNow();
     }
 
     private Config getConfig(String ip) {
@@ -1,28 +1,60 @@
 package com.github.catvod.spider;
 
 import android.content.Context;
+import android.net.Uri;
 import android.text.TextUtils;
+import android.util.LruCache;
 
 import com.github.catvod.bean.Class;
 import com.github.catvod.bean.Result;
 import com.github.catvod.bean.Vod;
 import com.github.catvod.bean.samba.Drive;
+import com.github.catvod.bean.samba.Pool;
+import com.github.catvod.bean.samba.Sorter;
 import com.github.catvod.crawler.Spider;
 import com.github.catvod.net.OkHttp;
+import com.github.catvod.utils.BlockCache;
 import com.github.catvod.utils.Image;
 import com.github.catvod.utils.Util;
+import com.hierynomus.mserref.NtStatus;
 import com.hierynomus.msfscc.FileAttributes;
 import com.hierynomus.msfscc.fileinformation.FileIdBothDirectoryInformation;
+import com.hierynomus.msfscc.fileinformation.FileAllInformation;
+import com.hierynomus.mssmb2.SMB2CompletionFilter;
+import com.hierynomus.mssmb2.messages.SMB2ChangeNotifyResponse;
 import com.hierynomus.protocol.commons.EnumWithValue;
+import com.hierynomus.smbj.common.SMBRuntimeException;
+import com.hierynomus.smbj.share.Directory;
+import com.hierynomus.smbj.share.DiskEntry;
+import com.hierynomus.smbj.share.File;
 
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 public class Samba extends Spider {
 
+    private static final int BLOCK_SIZE = 4 * 1024 * 1024;
+    private static final int CHUNK_SIZE = 1024 * 1024;
+    private static final int PIPELINE = 4;
+    private static final long TTL = TimeUnit.MINUTES.toMillis(1);
+    private static final long WATCH_TTL = TimeUnit.MINUTES.toMillis(30);
+    private static final Set<SMB2CompletionFilter> FILTER = EnumSet.of(SMB2CompletionFilter.FILE_NOTIFY_CHANGE_FILE_NAME, SMB2CompletionFilter.FILE_NOTIFY_CHANGE_DIR_NAME, SMB2CompletionFilter.FILE_NOTIFY_CHANGE_SIZE, SMB2CompletionFilter.FILE_NOTIFY_CHANGE_LAST_WRITE);
+
+    private LruCache<String, Listing> cache;
+    private LruCache<String, Handle> files;
+    private LruCache<String, Stat> stats;
+    private ExecutorService executor;
+    private BlockCache blocks;
     private List<Drive> drives;
     private String extend;
 
@@ -46,6 +78,24 @@ public class Samba extends Spider {
 
     @Override
     public void init(Context context, String extend) {
+        this.executor = Executors.newFixedThreadPool(PIPELINE);
+        this.blocks = new BlockCache(BLOCK_SIZE, BLOCK_SIZE * 8, 2);
+        this.stats = new LruCache<>(64);
+        this.cache = new LruCache<String, Listing>(32) {
+            @Override
+            protected void entryRemoved(boolean evicted, String key, Listing oldValue, Listing newValue) {
+                oldValue.close();
+            }
+        };
+        this.files = new LruCache<String, Handle>(8) {
+            @Override
+            protected void entryRemoved(boolean evicted, String key, Handle oldValue, Handle newValue) {
+                synchronized (files) {
+                    oldValue.removed = true;
+                    if (oldValue.refs == 0) Pool.get().close(oldValue.file);
+                }
+            }
+        };
         this.extend = extend;
         fetchRule();
     }
@@ -58,7 +108,7 @@ public class Samba extends Spider {
     }
 
     @Override
-    public String categoryContent(String tid, String pg, boolean filter, HashMap<String, String> hashMap) {
+    public String categoryContent(String tid, String pg, boolean filter, HashMap<String, String> hashMap) throws IOException {
         String key = tid.contains("/") ? tid.substring(0, tid.indexOf("/")) : tid;
         String path = tid.contains("/") ? tid.substring(tid.indexOf("/") + 1) : "";
         Drive drive = getDrive(key);
@@ -72,7 +122,7 @@ public class Samba extends Spider {
     }
 
     @Override
-    public String detailContent(List<String> ids) {
+    public String detailContent(List<String> ids) throws IOException {
         String tid = ids.get(0);
         String key = tid.contains("/") ? tid.substring(0, tid.indexOf("/")) : tid;
         String path = tid.contains("/") ? tid.substring(tid.indexOf("/") + 1) : "";
@@ -82,7 +132,7 @@ public class Samba extends Spider {
         List<String> playUrls = new ArrayList<>();
         for (FileIdBothDirectoryInformation item : getList(drive, parent)) {
             if (isFile(item)) {
-                playUrls.add(item.getFileName() + "$" + getPath(drive.getServer(), parent, item.getFileName()));
+                playUrls.add(item.getFileName() + "$" + getPath(key, parent, item.getFileName()));
             }
         }
         Vod vod = new Vod();
@@ -95,7 +145,52 @@ public class Samba extends Spider {
 
     @Override
     public String playerContent(String flag, String id, List<String> vipFlags) {
-        return Result.get().url(id).string();
+        if (id.startsWith("smb://")) return Result.get().url(id).string();
+        return Result.get().url(Proxy.getUrl(siteKey, "&url=" + Uri.encode(id))).string();
+    }
+
+    @Override
+    public Object[] proxy(Map<String, String> params) throws IOException {
+        String url = Uri.decode(params.get("url"));
+        String key = url.contains("/") ? url.substring(0, url.indexOf("/")) : url;
+        String path = url.contains("/") ? url.substring(url.indexOf("/") + 1) : "";
+        Drive drive = getDrive(key);
+        Remote remote = new Remote(drive, url, getPath(drive.getSubPath(), path));
+        Stat stat = remote.stat();
+        return blocks.get(url + "@" + stat.time + ":" + stat.size, remote, params.get("range"), "application/octet-stream");
+    }
+
+    private Handle acquire(Drive drive, String key, String path) throws IOException {
+        synchronized (files) {
+            Handle handle = files.get(key);
+            if (handle != null) return handle.acquire();
+        }
+        File file = drive.openFile(path);
+        synchronized (files) {
+            Handle handle = files.get(key);
+            if (handle == null) files.put(key, handle = new Handle(file));
+            else Pool.get().close(file);
+            return handle.acquire();
+        }
+    }
+
+    private void release(Handle handle) {
+        synchronized (files) {
+            handle.refs--;
+            if (handle.removed && handle.refs == 0) Pool.get().close(handle.file);
+        }
+    }
+
+    private void evict(String key) {
+        synchronized (files) {
+            files.remove(key);
+        }
+    }
+
+    private void evict(String key, Handle handle) {
+        synchronized (files) {
+            if (files.get(key) == handle) files.remove(key);
+        }
     }
 
     private String getPath(String... texts) {
@@ -104,24 +199,218 @@ public class Samba extends Spider {
         return TextUtils.join("/", items);
     }
 
-    private List<FileIdBothDirectoryInformation> getList(Drive drive, String path) {
-        List<FileIdBothDirectoryInformation> items = drive.getShare().list(getPath(drive.getSubPath(), path));
+    private List<FileIdBothDirectoryInformation> getList(Drive drive, String path) throws IOException {
+        String key = getPath(drive.getName(), path);
+        sweep();
+        Listing listing = cache.get(key);
+        if (listing != null && listing.isValid()) return listing.items;
+        String target = getPath(drive.getSubPath(), path);
+        Directory directory = watch(drive, target);
+        Future<SMB2ChangeNotifyResponse> watch = Listing.watch(directory);
+        try {
+            List<FileIdBothDirectoryInformation> items = fetchList(drive, target);
+            cache.put(key, new Listing(items, directory, watch));
+            return items;
+        } catch (IOException | RuntimeException e) {
+            Listing.close(directory, watch);
+            throw e;
+        }
+    }
+
+    private void sweep() {
+        for (Map.Entry<String, Listing> entry : cache.snapshot().entrySet()) if (!entry.getValue().isValid() && cache.get(entry.getKey()) == entry.getValue()) cache.remove(entry.getKey());
+    }
+
+    private Directory watch(Drive drive, String path) {
+        try {
+            return drive.openDirectory(path);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private List<FileIdBothDirectoryInformation> fetchList(Drive drive, String path) throws IOException {
+        List<FileIdBothDirectoryInformation> items = drive.execute(share -> share.list(path));
         Iterator<FileIdBothDirectoryInformation> iterator = items.iterator();
         while (iterator.hasNext()) {
             FileIdBothDirectoryInformation item = iterator.next();
             if (isFolder(item) && item.getFileName().startsWith(".")) iterator.remove();
             if (isFile(item) && !Util.isMedia(item.getFileName())) iterator.remove();
         }
-        Collections.sort(items, (o1, o2) -> {
-            if (isFolder(o1) && isFile(o2)) return -1;
-            if (isFile(o1) && isFolder(o2)) return 1;
-            return o1.getFileName().toLowerCase().compareTo(o2.getFileName().toLowerCase());
-        });
+        Sorter.sort(items);
         return items;
     }
 
     @Override
     public void destroy() {
-        for (Drive drive : drives) drive.release();
+        blocks.release();
+        executor.shutdownNow();
+        files.evictAll();
+        stats.evictAll();
+        cache.evictAll();
+        Pool.get().release();
+    }
+
+    static class Listing {
+
+        private final List<FileIdBothDirectoryInformation> items;
+        private final Future<SMB2ChangeNotifyResponse> watch;
+        private final Directory directory;
+        private final long time;
+
+        public Listing(List<FileIdBothDirectoryInformation> items, Directory directory, Future<SMB2ChangeNotifyResponse> watch) {
+            this.items = items;
+            this.directory = directory;
+            this.watch = watch;
+            this.time = System.currentTimeMillis();
+        }
+
+        private static Future<SMB2ChangeNotifyResponse> watch(Directory directory) {
+            try {
+                return directory == null ? null : directory.watchAsync(FILTER, false);
+            } catch (Exception e) {
+                return null;
+            }
+        }
+
+        public boolean isValid() {
+            long age = System.currentTimeMillis() - time;
+            if (watch == null) return age < TTL;
+            if (!watch.isDone()) return age < WATCH_TTL;
+            try {
+                SMB2ChangeNotifyResponse response = watch.get();
+                return !response.isSuccess() && response.getHeader().getStatusCode() != NtStatus.STATUS_NOTIFY_ENUM_DIR.getValue() && age < TTL;
+            } catch (Exception e) {
+                return age < TTL;
+            }
+        }
+
+        public void close() {
+            close(directory, watch);
+        }
+
+        private static void close(Directory directory, Future<SMB2ChangeNotifyResponse> watch) {
+            if (watch != null) watch.cancel(true);
+            if (directory != null) directory.closeSilently();
+        }
+    }
+
+    static class Stat {
+
+        private final long size;
+        private final long time;
+        private final long cached;
+
+        public Stat(long size, long time) {
+            this.cached = System.currentTimeMillis();
+            this.size = size;
+            this.time = time;
+        }
+
+        public boolean isExpired() {
+            return System.currentTimeMillis() - cached > TTL;
+        }
+    }
+
+    static class Handle {
+
+        private final File file;
+        private boolean removed;
+        private int refs;
+
+        public Handle(File file) {
+            this.file = file;
+        }
+
+        public Handle acquire() {
+            refs++;
+            return this;
+        }
+    }
+
+    interface Task<T> {
+
+        T call(File file) throws IOException;
+    }
+
+    class Remote implements BlockCache.Source {
+
+        private final Drive drive;
+        private final String path;
+        private final String key;
+
+        public Remote(Drive drive, String key, String path) {
+            this.drive = drive;
+            this.path = path;
+            this.key = key;
+        }
+
+        public Stat stat() throws IOException {
+            Stat stat = stats.get(key);
+            if (stat != null && !stat.isExpired()) return stat;
+            if (stat != null) evict(key);
+            FileAllInformation info = execute(DiskEntry::getFileInformation);
+            stats.put(key, stat = new Stat(info.getStandardInformation().getEndOfFile(), info.getBasicInformation().getLastWriteTime().toEpochMillis()));
+            return stat;
+        }
+
+        @Override
+        public long length() throws IOException {
+            return stat().size;
+        }
+
+        @Override
+        public byte[] read(long offset, int length) throws IOException {
+            return execute(file -> read(file, offset, length));
+        }
+
+        private <T> T execute(Task<T> task) throws IOException {
+            try {
+                return call(task);
+            } catch (SMBRuntimeException | IOException e) {
+                return call(task);
+            }
+        }
+
+        private <T> T call(Task<T> task) throws IOException {
+            Handle handle = acquire(drive, key, path);
+            try {
+                return task.call(handle.file);
+            } catch (SMBRuntimeException | IOException e) {
+                evict(key, handle);
+                throw e;
+            } finally {
+                release(handle);
+            }
+        }
+
+        private byte[] read(File file, long offset, int length) throws IOException {
+            byte[] data = new byte[(int) Math.max(0, Math.min(length, length() - offset))];
+            int chunk = Math.min(CHUNK_SIZE, drive.getMaxReadSize());
+            List<Future<?>> futures = new ArrayList<>();
+            for (int position = 0; position < data.length; position += chunk) {
+                int from = position;
+                int count = Math.min(chunk, data.length - position);
+                futures.add(executor.submit(() -> read(file, data, offset + from, from, count)));
+            }
+            try {
+                for (Future<?> future : futures) future.get();
+                return data;
+            } catch (Exception e) {
+                for (Future<?> future : futures) future.cancel(true);
+                throw new IOException(e);
+            }
+        }
+
+        private Void read(File file, byte[] data, long offset, int from, int count) throws IOException {
+            while (count > 0) {
+                int read = file.read(data, offset, from, count);
+                if (read <= 0) throw new IOException("Unexpected end of file");
+                offset += read;
+                from += read;
+                count -= read;
+            }
+            return null;
+        }
     }
 }
@@ -1,7 +1,9 @@
 package com.github.catvod.spider;
 
 import android.content.Context;
+import android.net.Uri;
 import android.text.TextUtils;
+import android.util.LruCache;
 
 import com.github.catvod.bean.Class;
 import com.github.catvod.bean.Filter;
@@ -12,22 +14,47 @@ import com.github.catvod.bean.webdav.Drive;
 import com.github.catvod.bean.webdav.Sorter;
 import com.github.catvod.crawler.Spider;
 import com.github.catvod.net.OkHttp;
+import com.github.catvod.utils.BlockCache;
+import com.github.catvod.utils.Crypto;
 import com.github.catvod.utils.Image;
+import com.github.catvod.utils.Index;
+import com.github.catvod.utils.Path;
 import com.github.catvod.utils.Util;
 import com.thegrizzlylabs.sardineandroid.DavResource;
+import com.thegrizzlylabs.sardineandroid.Sardine;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.namespace.QName;
+
+import okhttp3.Response;
+import okio.BufferedSource;
 
 public class WebDAV extends Spider {
 
+    private static final Set<QName> PROPS = Collections.emptySet();
+    private static final long TTL = TimeUnit.MINUTES.toMillis(5);
+    private static final int BLOCK_SIZE = 1024 * 1024;
+    private static final int PAGE_SIZE = 100;
+
+    private LruCache<String, Listing> cache;
+    private LruCache<String, Head> heads;
+    private Map<String, Index> indexes;
+    private ExecutorService executor;
+    private BlockCache blocks;
     private List<Drive> drives;
     private List<String> allExt;
     private String extend;
@@ -61,8 +88,45 @@ public class WebDAV extends Spider {
     public void init(Context context, String extend) {
         this.allExt = new ArrayList<>(Arrays.asList("ass", "ssa", "srt"));
         this.allExt.addAll(Util.MEDIA);
+        this.executor = Executors.newCachedThreadPool();
+        this.blocks = new BlockCache(BLOCK_SIZE, BLOCK_SIZE * 32, 4);
+        this.indexes = new HashMap<>();
+        this.cache = new LruCache<>(64);
+        this.heads = new LruCache<>(256);
         this.extend = extend;
         fetchRule();
+        startIndex();
+    }
+
+    private void startIndex() {
+        for (Drive drive : drives) {
+            if (!drive.index()) continue;
+            Index index = new Index(Path.tv("webdav_" + Crypto.md5(drive.getServer() + drive.getName()))).load();
+            indexes.put(drive.getName(), index);
+            executor.execute(() -> crawl(drive, index));
+        }
+    }
+
+    private void crawl(Drive drive, Index index) {
+        try {
+            Sardine webdav = drive.getWebdav();
+            index.crawl(path -> getNodes(drive, webdav, path), drive.getPath(), 3, 200);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private List<Index.Node> getNodes(Drive drive, Sardine webdav, String path) throws IOException {
+        List<Index.Node> nodes = new ArrayList<>();
+        List<DavResource> items = webdav.list(drive.getHost() + encode(path), 1, PROPS);
+        if (!items.isEmpty()) items.remove(0);
+        for (DavResource item : items) {
+            if (!item.isDirectory() && !Util.isMedia(item.getName())) continue;
+            long time = item.getModified() == null ? 0 : item.getModified().getTime();
+            long size = item.getContentLength() == null ? 0 : item.getContentLength();
+            nodes.add(new Index.Node(item.getName(), size, time, item.getEtag(), item.isDirectory()));
+        }
+        return nodes;
     }
 
     @Override
@@ -123,6 +187,34 @@ public class WebDAV extends Spider {
         return Result.string(vod);
     }
 
+    @Override
+    public String searchContent(String key, boolean quick) {
+        return search(key, 1);
+    }
+
+    @Override
+    public String searchContent(String key, boolean quick, String pg) {
+        return search(key, Integer.parseInt(pg));
+    }
+
+    private String search(String key, int page) {
+        boolean more = false;
+        List<Vod> list = new ArrayList<>();
+        for (Drive drive : drives) {
+            Index index = indexes.get(drive.getName());
+            if (index == null || !index.isReady()) continue;
+            List<Index.Node> nodes = index.search(key);
+            for (int i = (page - 1) * PAGE_SIZE; i < Math.min(nodes.size(), page * PAGE_SIZE); i++) list.add(getVod(drive, nodes.get(i)));
+            more |= nodes.size() > page * PAGE_SIZE;
+        }
+        return Result.get().vod(list).page(page, more ? page + 1 : page, 0, 0).string();
+    }
+
+    private Vod getVod(Drive drive, Index.Node node) {
+        String id = drive.getName() + node.getFullPath() + (node.isFolder() ? "/" : "");
+        return new Vod(id, node.getName(), node.isFolder() ? Image.FOLDER : Image.VIDEO, node.isFolder() ? "" : Util.getSize(node.getSize()), node.isFolder());
+    }
+
     @Override
     public String playerContent(String flag, String id, List<String> vipFlags) {
         String[] ids = id.split("~~~");
@@ -135,17 +227,33 @@ public class WebDAV extends Spider {
         String key = url.contains("/") ? url.substring(0, url.indexOf("/")) : url;
         url = url.substring(key.length());
         Drive drive = getDrive(key);
-        Object[] result = new Object[3];
-        result[0] = 200;
-        result[1] = "application/octet-stream";
-        result[2] = drive.getWebdav().get(drive.getHost() + url, getHeaders(params));
+        Remote remote = new Remote(drive, drive.getHost() + encode(url));
+        Head head = remote.head();
+        if (head.code != 200 || OkHttp.HEAD.equalsIgnoreCase(params.get("method"))) return getHead(head);
+        return blocks.get(drive.getName() + url + "@" + head.tag, remote, params.get("range"), head.type, new HashMap<>(head.header));
+    }
+
+    private Object[] getHead(Head head) {
+        Map<String, String> header = new HashMap<>(head.header);
+        if (head.code == 200) header.put("Accept-Ranges", "bytes");
+        if (head.code == 200) header.put("Content-Length", String.valueOf(head.length));
+        Object[] result = new Object[4];
+        result[0] = head.code;
+        result[1] = head.type;
+        result[2] = new ByteArrayInputStream(new byte[0]);
+        result[3] = header;
         return result;
     }
 
+    private String encode(String path) {
+        List<String> items = new ArrayList<>();
+        for (String segment : path.split("/", -1)) items.add(Uri.encode(segment));
+        return TextUtils.join("/", items);
+    }
+
     private List<DavResource> getList(Drive drive, String path, List<String> ext) throws IOException {
         path = drive.getHost() + (path.startsWith(drive.getPath()) ? path : drive.getPath() + path);
-        List<DavResource> items = drive.getWebdav().list(path);
-        items.remove(0); //Remove parent
+        List<DavResource> items = new ArrayList<>(getList(drive, path));
         Iterator<DavResource> iterator = items.iterator();
         while (iterator.hasNext()) {
             DavResource item = iterator.next();
@@ -155,6 +263,33 @@ public class WebDAV extends Spider {
         return items;
     }
 
+    private List<DavResource> getList(Drive drive, String url) throws IOException {
+        String key = drive.getName() + "@" + url;
+        Listing listing = cache.get(key);
+        if (listing != null && (!listing.isExpired() || isSame(drive, url, listing))) return listing.items;
+        List<DavResource> items = drive.getWebdav().list(url, 1, PROPS);
+        DavResource self = items.isEmpty() ? null : items.remove(0); //Remove parent
+        cache.put(key, new Listing(self, items));
+        return items;
+    }
+
+    private boolean isSame(Drive drive, String url, Listing listing) {
+        try {
+            if (listing.self == null) return false;
+            List<DavResource> items = drive.getWebdav().list(url, 0, PROPS);
+            if (items.isEmpty() || !isSame(listing.self, items.get(0))) return false;
+            cache.put(drive.getName() + "@" + url, new Listing(listing.self, listing.items));
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private boolean isSame(DavResource o1, DavResource o2) {
+        if (o1.getEtag() != null || o2.getEtag() != null) return TextUtils.equals(o1.getEtag(), o2.getEtag());
+        return o1.getModified() != null && o1.getModified().equals(o2.getModified());
+    }
+
     private List<DavResource> getSubs(List<DavResource> items) {
         List<DavResource> subs = new ArrayList<>();
         for (DavResource item : items) if (Util.isSub(item.getName())) subs.add(item);
@@ -186,10 +321,112 @@ public class WebDAV extends Spider {
         return sub;
     }
 
-    private Map<String, String> getHeaders(Map<String, String> params) {
-        Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
-        List<String> keys = Arrays.asList("referer", "icy-metadata", "range", "connection", "accept-encoding", "user-agent");
-        for (String key : params.keySet()) if (keys.contains(key)) headers.put(key, params.get(key));
-        return headers;
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+        blocks.release();
+        cache.evictAll();
+        heads.evictAll();
+    }
+
+    static class Listing {
+
+        private final List<DavResource> items;
+        private final DavResource self;
+        private final long time;
+
+        public Listing(DavResource self, List<DavResource> items) {
+            this.items = items;
+            this.self = self;
+            this.time = System.currentTimeMillis();
+        }
+
+        public boolean isExpired() {
+            return System.currentTimeMillis() - time > TTL;
+        }
+    }
+
+    static class Head {
+
+        private final Map<String, String> header;
+        private final String type;
+        private final String tag;
+        private final long length;
+        private final long time;
+        private final int code;
+
+        public Head(Response res, int code, long length) {
+            this.header = new HashMap<>();
+            for (String name : Arrays.asList("ETag", "Last-Modified")) if (res.header(name) != null) header.put(name, res.header(name));
+            this.type = res.header("Content-Type", "application/octet-stream");
+            this.tag = res.header("ETag", res.header("Last-Modified", ""));
+            this.time = System.currentTimeMillis();
+            this.length = length;
+            this.code = code;
+        }
+
+        public boolean isExpired() {
+            return System.currentTimeMillis() - time > TTL;
+        }
+    }
+
+    class Remote implements BlockCache.Source {
+
+        private final Drive drive;
+        private final String url;
+        private Head head;
+
+        public Remote(Drive drive, String url) {
+            this.drive = drive;
+            this.url = url;
+        }
+
+        public Head head() throws IOException {
+            Head cached = heads.get(url);
+            if (cached != null && !cached.isExpired()) return head = cached;
+            head = fetch();
+            if (head.code == 200) heads.put(url, head);
+            return head;
+        }
+
+        private Head fetch() throws IOException {
+            try (Response res = OkHttp.newCall(drive.getClient(), OkHttp.HEAD, url, new HashMap<>())) {
+                long length = Long.parseLong(res.header("Content-Length", "-1"));
+                if (res.isSuccessful() && length >= 0) return new Head(res, 200, length);
+            }
+            Map<String, String> header = new HashMap<>();
+            header.put("Range", "bytes=0-0");
+            try (Response res = OkHttp.newCall(drive.getClient(), OkHttp.GET, url, header)) {
+                if (!res.isSuccessful()) return new Head(res, res.code(), -1);
+                long length = getLength(res);
+                return new Head(res, length < 0 ? 502 : 200, length);
+            }
+        }
+
+        private long getLength(Response res) {
+            try {
+                String range = res.header("Content-Range", "");
+                if (res.code() == 206) return Long.parseLong(range.substring(range.lastIndexOf("/") + 1).trim());
+                return Long.parseLong(res.header("Content-Length", "-1"));
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+
+        @Override
+        public long length() throws IOException {
+            return (head == null ? head() : head).length;
+        }
+        @Override
+        public byte[] read(long offset, int length) throws IOException {
+            Map<String, String> header = new HashMap<>();
+            header.put("Range", "bytes=" + offset + "-" + (offset + length - 1));
+            try (Response res = OkHttp.newCall(drive.getClient(), OkHttp.GET, url, header)) {
+                if (res.code() != 206 && (res.code() != 200 || offset > 0)) throw new IOException("HTTP " + res.code());
+                BufferedSource source = res.body().source();
+                source.request(length);
+                return source.readByteArray(Math.min(length, source.getBuffer().size()));
+            }
+        }
     }
 }
@@ -4,13 +4,14 @@ import android.content.Context;
 
 import com.github.catvod.bean.live.Channel;
 import com.github.catvod.bean.live.Group;
+import com.github.catvod.bean.live.Playlist;
 import com.github.catvod.bean.xtream.Config;
 import com.github.catvod.bean.xtream.XCategory;
 import com.github.catvod.bean.xtream.XStream;
 import com.github.catvod.crawler.Spider;
 import com.github.catvod.net.OkHttp;
-import com.google.gson.Gson;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -28,11 +29,11 @@ public class XtreamCode extends Spider {
     }
 
     @Override
-    public String liveContent(String url) {
+    public String liveContent(String url) throws IOException {
         config.setUrl(url);
         setChannel();
         setNumber();
-        return new Gson().toJson(groups);
+        return Playlist.create(Playlist.count(groups)).json(groups).string();
     }
 
     private void setChannel() {
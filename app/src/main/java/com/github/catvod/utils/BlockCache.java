@@ -0,0 +1,177 @@
+package com.github.catvod.utils;
+
+import android.util.LruCache;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+
+public class BlockCache {
+
+    private final ConcurrentHashMap<String, FutureTask<byte[]>> loading;
+    private final LruCache<String, Long> cursors;
+    private final LruCache<String, byte[]> blocks;
+    private final ExecutorService executor;
+    private final int blockSize;
+    private final int readAhead;
+
+    public interface Source {
+
+        long length() throws IOException;
+
+        byte[] read(long offset, int length) throws IOException;
+    }
+
+    public BlockCache(int blockSize, int maxSize, int readAhead) {
+        this.blocks = new LruCache<String, byte[]>(maxSize) {
+            @Override
+            protected int sizeOf(String key, byte[] value) {
+                return value.length;
+            }
+        };
+        this.executor = Executors.newFixedThreadPool(readAhead);
+        this.loading = new ConcurrentHashMap<>();
+        this.cursors = new LruCache<>(32);
+        this.blockSize = blockSize;
+        this.readAhead = readAhead;
+    }
+
+    public Object[] get(String key, Source source, String range, String mime) throws IOException {
+        return get(key, source, range, mime, new HashMap<>());
+    }
+
+    public Object[] get(String key, Source source, String range, String mime, Map<String, String> header) throws IOException {
+        long length = source.length();
+        long start = 0;
+        long end = length - 1;
+        if (range != null && range.startsWith("bytes=")) {
+            String[] split = range.substring(6).split(",")[0].trim().split("-", -1);
+            if (split[0].isEmpty()) start = Math.max(0, length - Long.parseLong(split[1]));
+            else start = Long.parseLong(split[0]);
+            if (!split[0].isEmpty() && split.length > 1 && !split[1].isEmpty()) end = Math.min(end, Long.parseLong(split[1]));
+        }
+        header.put("Accept-Ranges", "bytes");
+        Object[] result = new Object[4];
+        result[1] = mime;
+        result[3] = header;
+        if (start >= length || start > end) {
+            header.put("Content-Range", "bytes */" + length);
+            result[0] = 416;
+            result[2] = new ByteArrayInputStream(new byte[0]);
+            return result;
+        }
+        header.put("Content-Length", String.valueOf(end - start + 1));
+        if (range != null) header.put("Content-Range", "bytes " + start + "-" + end + "/" + length);
+        result[0] = range != null ? 206 : 200;
+        result[2] = open(key, source, start, end);
+        return result;
+    }
+
+    public InputStream open(String key, Source source, long start, long end) {
+        return new BlockStream(key, source, start, end);
+    }
+
+    public void release() {
+        executor.shutdownNow();
+        blocks.evictAll();
+        cursors.evictAll();
+    }
+
+    private byte[] get(String key, Source source, long index) throws IOException {
+        String id = key + "#" + index;
+        byte[] data = blocks.get(id);
+        if (data != null) return data;
+        FutureTask<byte[]> task = new FutureTask<>(() -> load(id, source, index));
+        FutureTask<byte[]> running = loading.putIfAbsent(id, task);
+        if (running == null) (running = task).run();
+        try {
+            return running.get();
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+    }
+
+    private byte[] load(String id, Source source, long index) throws IOException {
+        try {
+            byte[] data = source.read(index * blockSize, blockSize);
+            blocks.put(id, data);
+            return data;
+        } finally {
+            loading.remove(id);
+        }
+    }
+
+    private void prefetch(String key, Source source, long index, long last) {
+        for (long next = index + 1; next <= Math.min(index + readAhead, last); next++) {
+            String id = key + "#" + next;
+            if (executor.isShutdown()) return;
+            if (blocks.get(id) != null || loading.containsKey(id)) continue;
+            long target = next;
+            executor.execute(() -> {
+                try {
+                    get(key, source, target);
+                } catch (IOException ignored) {
+                }
+            });
+        }
+    }
+
+    private boolean isSequential(String key, long index) {
+        Long cursor = cursors.get(key);
+        return cursor != null && (cursor == index - 1 || cursor == index);
+    }
+
+    class BlockStream extends InputStream {
+
+        private final Source source;
+        private final String key;
+        private final long end;
+        private long index;
+        private byte[] block;
+        private long position;
+
+        public BlockStream(String key, Source source, long start, long end) {
+            this.index = -1;
+            this.source = source;
+            this.key = key;
+            this.end = end;
+            this.position = start;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (position > end) return -1;
+            long current = position / blockSize;
+            if (current != index) next(current);
+            int offset = (int) (position - current * blockSize);
+            if (offset >= block.length) return -1;
+            int count = (int) Math.min(Math.min(len, block.length - offset), end - position + 1);
+            System.arraycopy(block, offset, b, off, count);
+            position += count;
+            return count;
+        }
+
+        private void next(long current) throws IOException {
+            boolean sequential = current == index + 1 || isSequential(key, current);
+            cursors.put(key, current);
+            block = get(key, source, current);
+            index = current;
+            if (sequential) prefetch(key, source, current, end / blockSize);
+        }
+    }
+}
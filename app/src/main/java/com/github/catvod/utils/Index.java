@@ -0,0 +1,237 @@
+package com.github.catvod.utils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class Index {
+
+    private static final long REFRESH = TimeUnit.DAYS.toMillis(1);
+
+    private final Map<String, Folder> folders;
+    private final File file;
+    private volatile boolean ready;
+
+    public interface Source {
+
+        List<Node> list(String path) throws Exception;
+    }
+
+    public Index(File file) {
+        this.folders = new ConcurrentHashMap<>();
+        this.file = file;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public Index load() {
+        if (!file.exists()) return this;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            Folder folder = null;
+            while ((line = reader.readLine()) != null) {
+                String[] split = line.split("\t", -1);
+                if (split.length == 5 && split[0].equals("D")) folders.put(split[1], folder = new Folder(Long.parseLong(split[2]), split[3], Long.parseLong(split[4]), new ArrayList<>()));
+                else if (split.length == 6 && folder != null) folder.nodes.add(new Node(split[1], Long.parseLong(split[2]), Long.parseLong(split[3]), split[4], split[5].equals("1")));
+            }
+            for (Map.Entry<String, Folder> entry : folders.entrySet()) for (Node node : entry.getValue().nodes) node.path = entry.getKey();
+            ready = !folders.isEmpty();
+        } catch (Exception e) {
+            folders.clear();
+        }
+        return this;
+    }
+
+    public synchronized void save() {
+        File temp = new File(file.getPath() + ".tmp");
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8))) {
+            for (Map.Entry<String, Folder> entry : folders.entrySet()) {
+                Folder folder = entry.getValue();
+                writer.append("D\t").append(clean(entry.getKey())).append("\t").append(String.valueOf(folder.time)).append("\t").append(folder.tag).append("\t").append(String.valueOf(folder.crawled)).append("\n");
+                for (Node node : folder.nodes) writer.append("F\t").append(clean(node.name)).append("\t").append(String.valueOf(node.size)).append("\t").append(String.valueOf(node.time)).append("\t").append(node.tag).append("\t").append(node.folder ? "1" : "0").append("\n");
+            }
+        } catch (Exception e) {
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(file)) temp.delete();
+    }
+
+    public void crawl(Source source, String root, int threads, long delay) throws InterruptedException {
+        Crawler crawler = new Crawler(source, threads, delay);
+        try {
+            crawler.submit(root, 0, "");
+            crawler.latch.await();
+        } finally {
+            crawler.pool.shutdownNow();
+        }
+        if (!folders.containsKey(root)) return;
+        folders.keySet().retainAll(crawler.seen);
+        ready = true;
+        save();
+    }
+
+    public List<Node> search(String keyword) {
+        String key = keyword.toLowerCase(Locale.ROOT);
+        List<Node> prefix = new ArrayList<>();
+        List<Node> contains = new ArrayList<>();
+        for (Folder folder : folders.values()) {
+            for (Node node : folder.nodes) {
+                int index = node.key.indexOf(key);
+                if (index == 0) prefix.add(node);
+                else if (index > 0) contains.add(node);
+            }
+        }
+        prefix.addAll(contains);
+        return prefix;
+    }
+
+    private static String clean(String text) {
+        return text.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+
+    private static String join(String path, String name) {
+        return path.endsWith("/") ? path + name : path + "/" + name;
+    }
+
+    public static class Node {
+
+        private final String name;
+        private final String key;
+        private final String tag;
+        private final long size;
+        private final long time;
+        private final boolean folder;
+        private String path;
+
+        public Node(String name, long size, long time, boolean folder) {
+            this(name, size, time, "", folder);
+        }
+
+        public Node(String name, long size, long time, String tag, boolean folder) {
+            this.name = clean(name);
+            this.tag = tag == null ? "" : clean(tag);
+            this.key = this.name.toLowerCase(Locale.ROOT);
+            this.size = size;
+            this.time = time;
+            this.folder = folder;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public String getFullPath() {
+            return join(path, name);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        public boolean isFolder() {
+            return folder;
+        }
+    }
+
+    static class Folder {
+
+        private final long time;
+        private final String tag;
+        private final long crawled;
+        private final List<Node> nodes;
+
+        public Folder(long time, String tag, long crawled, List<Node> nodes) {
+            this.time = time;
+            this.tag = tag;
+            this.crawled = crawled;
+            this.nodes = nodes;
+        }
+
+        public boolean isStale(long time, String tag) {
+            if (System.currentTimeMillis() - crawled > REFRESH) return true;
+            if (!tag.isEmpty()) return !tag.equals(this.tag);
+            return time <= 0 || time != this.time;
+        }
+    }
+
+    class Crawler {
+
+        private final ExecutorService pool;
+        private final CountDownLatch latch;
+        private final AtomicInteger pending;
+        private final Set<String> seen;
+        private final Source source;
+        private final long delay;
+
+        public Crawler(Source source, int threads, long delay) {
+            this.pool = Executors.newFixedThreadPool(threads);
+            this.seen = Collections.newSetFromMap(new ConcurrentHashMap<>());
+            this.latch = new CountDownLatch(1);
+            this.pending = new AtomicInteger();
+            this.source = source;
+            this.delay = delay;
+        }
+
+        private void submit(String path, long time, String tag) {
+            if (!seen.add(path)) return;
+            pending.incrementAndGet();
+            pool.execute(() -> visit(path, time, tag));
+        }
+
+        private void visit(String path, long time, String tag) {
+            try {
+                Folder folder = folders.get(path);
+                if (folder == null || folder.isStale(time, tag)) folder = fetch(path, time, tag, folder);
+                for (Node node : folder.nodes) if (node.folder) submit(node.getFullPath(), node.time, node.tag);
+            } catch (Exception ignored) {
+            } finally {
+                if (pending.decrementAndGet() == 0) latch.countDown();
+            }
+        }
+
+        private Folder fetch(String path, long time, String tag, Folder old) throws InterruptedException {
+            try {
+                List<Node> nodes = source.list(path);
+                for (Node node : nodes) node.path = path;
+                Folder folder = new Folder(time, tag, System.currentTimeMillis(), nodes);
+                folders.put(path, folder);
+                return folder;
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                if (old == null) throw new IllegalStateException(e);
+                return old;
+            } finally {
+                Thread.sleep(delay);
+            }
+        }
+    }
+}
@@ -114,10 +114,26 @@ public class Path {
     }
 
     public static void sort(File[] files) {
-        Arrays.sort(files, (o1, o2) -> {
-            if (o1.isDirectory() && o2.isFile()) return -1;
-            if (o1.isFile() && o2.isDirectory()) return 1;
-            return o1.getName().toLowerCase().compareTo(o2.getName().toLowerCase());
+        Sort.sort(files, new Sort.Key<File>() {
+            @Override
+            public String getName(File item) {
+                return item.getName();
+            }
+
+            @Override
+            public long getSize(File item) {
+                return item.length();
+            }
+
+            @Override
+            public long getTime(File item) {
+                return item.lastModified();
+            }
+
+            @Override
+            public boolean isFolder(File item) {
+                return item.isDirectory();
+            }
         });
     }
 
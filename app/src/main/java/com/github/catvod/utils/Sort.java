@@ -0,0 +1,132 @@
+package com.github.catvod.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+public class Sort {
+
+    public interface Key<T> {
+
+        String getName(T item);
+
+        long getSize(T item);
+
+        long getTime(T item);
+
+        boolean isFolder(T item);
+    }
+
+    public static <T> void sort(List<T> items, Key<T> key) {
+        sort(items, key, "name", true, true);
+    }
+
+    public static <T> void sort(List<T> items, Key<T> key, String type, String order) {
+        sort(items, key, type, "asc".equals(order), false);
+    }
+
+    public static <T> void sort(T[] items, Key<T> key) {
+        sort(Arrays.asList(items), key);
+    }
+
+    private static <T> void sort(List<T> items, Key<T> key, String type, boolean asc, boolean group) {
+        if (items.size() < 2) return;
+        int mode = getMode(type);
+        if (mode < 0) return;
+        int size = items.size();
+        int[] index = new int[size];
+        Keys keys = new Keys(size, mode, asc);
+        for (int i = 0; i < size; i++) keys.put(i, items.get(i), key, group);
+        for (int i = 0; i < size; i++) index[i] = i;
+        keys.sort(index, new int[size], 0, size);
+        List<T> copy = new ArrayList<>(items);
+        for (int i = 0; i < size; i++) items.set(i, copy.get(index[i]));
+    }
+
+    private static int getMode(String type) {
+        switch (type) {
+            case "name":
+                return 0;
+            case "size":
+                return 1;
+            case "date":
+                return 2;
+            default:
+                return -1;
+        }
+    }
+
+    public static String natural(String name) {
+        String text = name.toLowerCase(Locale.ROOT);
+        StringBuilder sb = new StringBuilder(text.length() + 8);
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (!Character.isDigit(c)) {
+                sb.append(c);
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < text.length() && Character.isDigit(text.charAt(i))) i++;
+            int from = start;
+            while (from < i - 1 && text.charAt(from) == '0') from++;
+            sb.append((char) ('0' + i - from)).append(text, from, i);
+        }
+        return sb.toString();
+    }
+
+    static class Keys {
+
+        private static final int RUN = 16;
+
+        private final boolean[] folders;
+        private final String[] names;
+        private final long[] values;
+        private final boolean asc;
+        private final int mode;
+
+        public Keys(int size, int mode, boolean asc) {
+            this.folders = new boolean[size];
+            this.names = mode == 0 ? new String[size] : null;
+            this.values = mode == 0 ? null : new long[size];
+            this.mode = mode;
+            this.asc = asc;
+        }
+
+        public <T> void put(int i, T item, Key<T> key, boolean group) {
+            folders[i] = group && key.isFolder(item);
+            if (mode == 0) names[i] = natural(key.getName(item));
+            else values[i] = mode == 1 ? key.getSize(item) : key.getTime(item);
+        }
+
+        private int compare(int a, int b) {
+            if (folders[a] != folders[b]) return folders[a] ? -1 : 1;
+            int result = mode == 0 ? names[a].compareTo(names[b]) : Long.compare(values[a], values[b]);
+            return asc ? result : -result;
+        }
+
+        public void sort(int[] index, int[] temp, int from, int to) {
+            if (to - from <= RUN) {
+                insert(index, from, to);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            sort(index, temp, from, mid);
+            sort(index, temp, mid, to);
+            if (compare(index[mid - 1], index[mid]) <= 0) return;
+            System.arraycopy(index, from, temp, from, to - from);
+            for (int i = from, l = from, r = mid; i < to; i++) index[i] = r >= to || (l < mid && compare(temp[l], temp[r]) <= 0) ? temp[l++] : temp[r++];
+        }
+
+        private void insert(int[] index, int from, int to) {
+            for (int i = from + 1; i < to; i++) {
+                int value = index[i];
+                int j = i - 1;
+                for (; j >= from && compare(index[j], value) > 0; j--) index[j + 1] = index[j];
+                index[j + 1] = value;
+            }
+        }
+    }
+}